@@ -0,0 +1,995 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static gitlet.BenchSetup.commitLine;
+import static gitlet.BenchSetup.edit;
+import static gitlet.BenchSetup.javaCommand;
+import static gitlet.BenchSetup.randomLines;
+import static gitlet.BenchSetup.randomText;
+import static gitlet.BenchSetup.runMain;
+import static gitlet.BenchSetup.tempDir;
+
+/** A debugging class whose main program times parts of Gitlet on
+ *  synthetic data.  It may be invoked as follows:
+ *      java gitlet.Bench CASE [N]
+ *  where CASE names one of the benchmarks below and N, if present,
+ *  scales its input.  Each case works in a fresh temporary directory,
+ *  made with its data by BenchSetup, and prints its timings on
+ *  System.out.  As an exception,
+ *      java gitlet.Bench pack [DIR]
+ *  reports on the existing blob store in DIR (by default, that of the
+ *  repository in the current directory), and
+ *      java gitlet.Bench train
+ *  runs the common commands in a new repository in the current
+ *  directory, as a training run for a class-data-sharing archive.
+ *  @author Sasha L.
+ */
+public class Bench {
+
+    /** Run the benchmark named by ARGS[0]. */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Bench CASE [N]");
+            return;
+        }
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        switch (args[0]) {
+        case "checkout":
+            checkout(n == 0 ? 20000 : n);
+            break;
+        case "delta":
+            delta(n == 0 ? 100 : n);
+            break;
+        case "commit-read":
+            commitRead(n == 0 ? 100000 : n);
+            break;
+        case "scan":
+            scan(n == 0 ? 50000 : n);
+            break;
+        case "hex":
+            hex(n == 0 ? 1000000 : n);
+            break;
+        case "merge-base":
+            mergeBase(n == 0 ? 1000000 : n);
+            break;
+        case "diff":
+            diff(n == 0 ? 100000 : n);
+            break;
+        case "diff-files":
+            diffFiles(n == 0 ? 1000000 : n);
+            break;
+        case "line-merge":
+            lineMerge(n == 0 ? 1000 : n);
+            break;
+        case "find":
+            find(n == 0 ? 20000 : n);
+            break;
+        case "global-log":
+            globalLog(n == 0 ? 20000 : n);
+            break;
+        case "short-id":
+            shortId(n == 0 ? 100000 : n);
+            break;
+        case "materialize":
+            materialize(n == 0 ? 20000 : n);
+            break;
+        case "switch":
+            switchBranches(n == 0 ? 20000 : n);
+            break;
+        case "switch-in-repo":
+            switchInRepo(n);
+            break;
+        case "durability":
+            durability(n == 0 ? 200 : n);
+            break;
+        case "print":
+            print(n == 0 ? 1000000 : n);
+            break;
+        case "daemon":
+            daemon(n == 0 ? 20 : n);
+            break;
+        case "batch":
+            batch(n == 0 ? 20 : n);
+            break;
+        case "startup":
+            startup(n == 0 ? 10 : n);
+            break;
+        case "train":
+            train();
+            break;
+        case "pack":
+            packReport(new File(args.length > 1 ? args[1]
+                    : ".gitlet/commits/blobs"));
+            break;
+        default:
+            System.out.println("No benchmark with that name exists.");
+        }
+    }
+
+    /** Compare materializing N small blobs from loose files and from a
+     *  pack. */
+    static void checkout(int n) throws IOException {
+        File root = tempDir("loose", "packed", "work");
+        File loose = new File(root, "loose");
+        File packed = new File(root, "packed");
+        File work = new File(root, "work");
+        ObjectStore pack = new ObjectStore(packed);
+        List<String> hashes = new ArrayList<>();
+        Random rand = new Random(n);
+        for (int i = 0; i < n; i += 1) {
+            byte[] contents = randomText(rand, 256 + rand.nextInt(4096));
+            String hash = Utils.sha1(contents);
+            Utils.writeContents(new File(loose, hash + ".txt"), contents);
+            pack.put(hash, contents);
+            hashes.add(hash);
+        }
+        pack.close();
+
+        long start = System.nanoTime();
+        ObjectStore looseStore = new ObjectStore(loose);
+        for (int i = 0; i < n; i += 1) {
+            Utils.writeContents(new File(work, "f" + i),
+                    looseStore.get(hashes.get(i)));
+        }
+        looseStore.close();
+        report("checkout loose", n, start);
+
+        start = System.nanoTime();
+        ObjectStore packStore = new ObjectStore(packed);
+        for (int i = 0; i < n; i += 1) {
+            Utils.writeContents(new File(work, "f" + i),
+                    packStore.get(hashes.get(i)));
+        }
+        packStore.close();
+        report("checkout packed", n, start);
+    }
+
+    /** Store N successive versions of a 1MB text file, each a small edit
+     *  of the last, as deltas and report on the resulting pack. */
+    static void delta(int n) throws IOException {
+        File root = tempDir();
+        ObjectStore store = new ObjectStore(root);
+        Random rand = new Random(n);
+        byte[] contents = randomText(rand, 1 << 20);
+        String prev = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            int at = rand.nextInt(contents.length - 64);
+            System.arraycopy(randomText(rand, 64), 0, contents, at, 64);
+            String hash = Utils.sha1(contents);
+            store.put(hash, contents, prev);
+            prev = hash;
+        }
+        store.close();
+        report("delta write", n, start);
+        packReport(root);
+    }
+
+    /** Report the compression ratio of the store in DIR, and the cost
+     *  of rebuilding each of its objects with a cold cache. */
+    static void packReport(File dir) {
+        ObjectStore store = new ObjectStore(dir);
+        List<String> hashes = store.packedHashes();
+        long logical, packed, rebuildNanos;
+        logical = packed = rebuildNanos = 0;
+        int maxDepth = 0;
+        for (String hash : hashes) {
+            store.clearCache();
+            long start = System.nanoTime();
+            logical += store.get(hash).length;
+            rebuildNanos += System.nanoTime() - start;
+            packed += store.packedLength(hash);
+            maxDepth = Math.max(maxDepth, store.depth(hash));
+        }
+        store.close();
+        System.out.printf("objects %d, logical %d bytes, packed %d bytes,"
+                + " ratio %.2f%n", hashes.size(), logical, packed,
+                (double) logical / Math.max(packed, 1));
+        System.out.printf("max chain depth %d, mean cold rebuild %.1f us%n",
+                maxDepth, rebuildNanos / 1e3 / Math.max(hashes.size(), 1));
+    }
+
+    /** Compare reading the file list of a commit that tracks N files
+     *  from its binary encoding and trees, and from its Java
+     *  serialization. */
+    static void commitRead(int n) throws IOException {
+        File root = tempDir();
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (int i = 0; i < n; i += 1) {
+            blobs.put("src/dir" + (i % 100) + "/file" + i + ".java",
+                    Utils.sha1("blob", Integer.toString(i)));
+        }
+        ObjectStore store = new ObjectStore(root);
+        Commit commit = new Commit("many files",
+                Tree.update(store, null, blobs), Utils.sha1("parent"), store);
+        File encoded = new File(root, "encoded");
+        File serialized = new File(root, "serialized");
+        commit.write(encoded);
+        commit.getBlobs();
+        Utils.writeObject(serialized, commit);
+        System.out.printf("encoded %d bytes, serialized %d bytes%n",
+                encoded.length(), serialized.length());
+        final int runs = 10;
+        for (int pass = 0; pass < 2; pass += 1) {
+            long start = System.nanoTime();
+            for (int r = 0; r < runs; r += 1) {
+                store.clearCache();
+                Commit.read(encoded, store).getBlobs();
+            }
+            report("read encoded", runs, start);
+            start = System.nanoTime();
+            for (int r = 0; r < runs; r += 1) {
+                Utils.readObject(serialized, Commit.class);
+            }
+            report("read serialized", runs, start);
+        }
+    }
+
+    /** Time hashing a synthetic tree of N files from scratch on 1, 2,
+     *  4, ... threads, up to the number of processors. */
+    static void scan(int n) throws IOException {
+        File root = tempDir();
+        Random rand = new Random(n);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            File dir = new File(root, "d" + (i % 100));
+            dir.mkdir();
+            File file = new File(dir, "f" + i);
+            Utils.writeContents(file,
+                    randomText(rand, 512 + rand.nextInt(2048)));
+            files.add(file);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            StatCache index = new StatCache(new File(root, "no-index"));
+            long start = System.nanoTime();
+            Hasher.hashAll(files, index, threads);
+            report("scan " + threads + " threads", n, start);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    /** Compare hashing N short strings the way sha1 once did, with a
+     *  fresh MessageDigest and a Formatter per hash, against the current
+     *  sha1 and against ObjectId, which skips the hexadecimal form. */
+    static void hex(int n) throws IOException {
+        byte[][] inputs = new byte[1024][];
+        Random rand = new Random(n);
+        for (int i = 0; i < inputs.length; i += 1) {
+            inputs[i] = randomText(rand, 32 + rand.nextInt(64));
+        }
+        int sink = 0;
+        for (int pass = 0; pass < 2; pass += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                sink += formatterSha1(inputs[i & 1023]).charAt(0);
+            }
+            report("formatter sha1", n, start);
+            start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                sink += Utils.sha1(inputs[i & 1023]).charAt(0);
+            }
+            report("table sha1", n, start);
+            start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                sink += ObjectId.of(inputs[i & 1023]).firstByte();
+            }
+            report("object id", n, start);
+        }
+        if (sink == 0) {
+            System.out.println();
+        }
+    }
+
+    /** Return the SHA-1 of CONTENTS as Utils.sha1 formerly computed
+     *  it. */
+    private static String formatterSha1(byte[] contents) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(contents);
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Build a commit graph of N synthetic commits on a main line and
+     *  BRANCHES long-lived branches, which now and then merge from main
+     *  (and main from them), and compare finding the split point of
+     *  each branch with main by mergeBase and by marking every ancestor
+     *  of one side, and time adding new commits on top of main. */
+    static void mergeBase(int n) throws IOException {
+        final int branches = 8;
+        File root = tempDir();
+        CommitGraph graph =
+            new CommitGraph(new File(root, "commit-graph"), null, null);
+        Random rand = new Random(n);
+        int[] heads = new int[branches + 1];
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            int b = rand.nextInt(branches + 1);
+            int second = -1;
+            if (i == 0) {
+                heads[b] = -1;
+            } else if (b != 0 && rand.nextInt(500) == 0) {
+                second = heads[0];
+            } else if (b == 0 && rand.nextInt(2000) == 0) {
+                second = heads[1 + rand.nextInt(branches)];
+            }
+            int pos = graph.append(
+                ObjectId.of(Integer.toString(i).getBytes()),
+                new int[] { heads[b], second }, i);
+            if (i == 0) {
+                Arrays.fill(heads, pos);
+            } else {
+                heads[b] = pos;
+            }
+        }
+        report("build graph", n, start);
+        start = System.nanoTime();
+        String tree = Utils.sha1("bench tree");
+        for (int i = 0; i < 100; i += 1) {
+            heads[0] = graph.add(new Commit("bench", tree,
+                graph.id(heads[0]).toHex(), null));
+        }
+        report("add commit", 100, start);
+        int[] bases = new int[branches + 1];
+        for (int pass = 0; pass < 2; pass += 1) {
+            start = System.nanoTime();
+            for (int b = 1; b <= branches; b += 1) {
+                bases[b] = graph.mergeBase(heads[b], heads[0]);
+            }
+            report("merge-base", branches, start);
+            start = System.nanoTime();
+            for (int b = 1; b <= branches; b += 1) {
+                int base = markingMergeBase(graph, heads[b], heads[0]);
+                if (graph.generation(base) != graph.generation(bases[b])) {
+                    throw new IllegalStateException("merge bases differ");
+                }
+            }
+            report("merge-base by marking", branches, start);
+        }
+        graph.close();
+    }
+
+    /** Return a latest common ancestor of the commits at A and B in
+     *  GRAPH, found by marking every ancestor of A and then searching
+     *  from B. */
+    private static int markingMergeBase(CommitGraph graph, int a, int b) {
+        HashSet<Integer> ancestors = new HashSet<>();
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        todo.push(a);
+        while (!todo.isEmpty()) {
+            int k = todo.pop();
+            if (k >= 0 && ancestors.add(k)) {
+                todo.push(graph.parent(k));
+                todo.push(graph.secondParent(k));
+            }
+        }
+        int best = -1;
+        HashSet<Integer> seen = new HashSet<>();
+        todo.push(b);
+        while (!todo.isEmpty()) {
+            int k = todo.pop();
+            if (k < 0 || !seen.add(k)) {
+                continue;
+            }
+            if (ancestors.contains(k)) {
+                if (best < 0 || graph.generation(k) > graph.generation(best)) {
+                    best = k;
+                }
+            } else {
+                todo.push(graph.parent(k));
+                todo.push(graph.secondParent(k));
+            }
+        }
+        return best;
+    }
+
+    /** Time diffing N-line inputs that differ in 100 places, and
+     *  N/20-line inputs that have little in common, in each Diff mode,
+     *  first with short lines and then with 200-character lines that
+     *  differ only at their ends, reporting the bytes allocated. */
+    static void diff(int n) {
+        for (int width : new int[] { 0, 200 }) {
+            Random rand = new Random(n);
+            List<String> base = randomLines(rand, n, 1000000, width);
+            List<String> edited = edit(base, rand, 100, true);
+            List<String> other1 = randomLines(rand, n / 20, 50, width);
+            List<String> other2 = randomLines(rand, n / 20, 50, width);
+            String lines = width == 0 ? "short" : "long";
+            for (Diff.Mode mode : Diff.Mode.values()) {
+                for (int pass = 0; pass < 2; pass += 1) {
+                    Diff diff = new Diff();
+                    diff.setMode(mode);
+                    long bytes = allocated();
+                    long start = System.nanoTime();
+                    diff.setSequences(base, edited);
+                    int common = diff.lls();
+                    report("similar " + lines + " " + mode, n, start);
+                    reportAllocation(bytes);
+                    bytes = allocated();
+                    start = System.nanoTime();
+                    diff.setSequences(other1, other2);
+                    common += diff.lls();
+                    report("different " + lines + " " + mode, n / 20, start);
+                    reportAllocation(bytes);
+                    if (common < 0) {
+                        System.out.println();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Time diffing two N-line files that differ in 100 places, read
+     *  whole into lists of Strings and memory-mapped by
+     *  Diff.setSequences(File, File), reporting the bytes allocated. */
+    static void diffFiles(int n) throws IOException {
+        File root = tempDir();
+        Random rand = new Random(n);
+        List<String> base = randomLines(rand, n, 1000000, 40);
+        List<String> edited = edit(base, rand, 100, false);
+        File file1 = new File(root, "base"), file2 = new File(root, "edited");
+        Files.write(file1.toPath(), base);
+        Files.write(file2.toPath(), edited);
+        base = edited = null;
+        for (int pass = 0; pass < 2; pass += 1) {
+            Diff diff = new Diff();
+            long bytes = allocated();
+            long start = System.nanoTime();
+            diff.setSequences(Files.readAllLines(file1.toPath()),
+                    Files.readAllLines(file2.toPath()));
+            int common = diff.lls();
+            report("diff read lines", n, start);
+            reportAllocation(bytes);
+            diff = new Diff();
+            bytes = allocated();
+            start = System.nanoTime();
+            diff.setSequences(file1, file2);
+            common -= diff.lls();
+            report("diff mapped files", n, start);
+            reportAllocation(bytes);
+            if (common != 0) {
+                System.out.println("Results differ.");
+            }
+        }
+    }
+
+    /** Time three-way merges of N 2000-line files, each edited in
+     *  different places on the two sides, on one thread and on the
+     *  default number. */
+    static void lineMerge(int n) throws IOException {
+        File root = tempDir();
+        Random rand = new Random(n);
+        List<byte[][]> versions = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            List<String> base = randomLines(rand, 2000, 1000000, 20);
+            List<String> ours = new ArrayList<>(base);
+            List<String> theirs = new ArrayList<>(base);
+            for (int k = 0; k < 10; k += 1) {
+                ours.set(rand.nextInt(1000), "ours " + k);
+                theirs.set(1000 + rand.nextInt(1000), "theirs " + k);
+            }
+            versions.add(new byte[][] {
+                (String.join("\n", base) + "\n").getBytes(),
+                (String.join("\n", ours) + "\n").getBytes(),
+                (String.join("\n", theirs) + "\n").getBytes() });
+            files.add(new File(root, "f" + i));
+        }
+        for (int threads : new int[] { 1, Hasher.threads() }) {
+            List<LineMerge> merges = new ArrayList<>();
+            for (byte[][] v : versions) {
+                merges.add(new LineMerge(v[0], v[1], v[2]));
+            }
+            long start = System.nanoTime();
+            boolean[] conflicts = LineMerge.mergeAll(merges, files, threads);
+            report("line merge, " + threads + " threads", n, start);
+            for (boolean conflict : conflicts) {
+                if (conflict) {
+                    System.out.println("Unexpected conflict.");
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Time finding commits by message among N commits by reading
+     *  every commit, as find once did, and through a MessageIndex: when
+     *  rebuilding it, when loading it, and for each kind of query. */
+    static void find(int n) throws IOException {
+        File root = tempDir("commits", "blobs");
+        File commits = new File(root, "commits");
+        ObjectStore store = new ObjectStore(new File(root, "blobs"));
+        Random rand = new Random(n);
+        commitLine(commits, store, n, i -> "Fix issue "
+                + rand.nextInt(n / 4 + 1) + " in module " + rand.nextInt(100));
+        String wanted = "Fix issue 7 in module 42";
+        long start = System.nanoTime();
+        int found = 0;
+        for (String name : Utils.plainFilenamesIn(commits)) {
+            if (Commit.read(new File(commits, name), store).getLog()
+                    .equals(wanted)) {
+                found += 1;
+            }
+        }
+        report("scan commits", n, start);
+        File file = new File(root, "message-index");
+        start = System.nanoTime();
+        new MessageIndex(file, commits, store).exact(wanted);
+        report("rebuild index", n, start);
+        start = System.nanoTime();
+        MessageIndex index = new MessageIndex(file, commits, store);
+        found -= index.exact(wanted).size();
+        report("load index, exact", n, start);
+        for (int pass = 0; pass < 2; pass += 1) {
+            start = System.nanoTime();
+            index.exact("Fix issue 8 in module 3");
+            report("exact", 1, start);
+            start = System.nanoTime();
+            index.prefix("Fix issue 12 ");
+            report("prefix", 1, start);
+            start = System.nanoTime();
+            index.substring("in module 99");
+            report("substring", 1, start);
+        }
+        store.close();
+        if (found != 0) {
+            System.out.println("Results differ.");
+        }
+    }
+
+    /** Time listing N commits by reading every commit file, as
+     *  global-log once did, and through a CommitCatalog, both in full
+     *  and limited to the newest 20, with the memory each allocates.
+     *  Appending the commits to the catalog is timed as well. */
+    static void globalLog(int n) throws IOException {
+        File root = tempDir("commits", "blobs");
+        File commits = new File(root, "commits");
+        ObjectStore store = new ObjectStore(new File(root, "blobs"));
+        File file = new File(root, "commit-catalog");
+        List<Commit> made =
+            commitLine(commits, store, n, i -> "Commit number " + i);
+        new CommitCatalog(file, commits, store).add(made.get(0));
+        long start = System.nanoTime();
+        CommitCatalog catalog = new CommitCatalog(file, commits, store);
+        for (Commit commit : made.subList(1, n)) {
+            catalog.add(commit);
+        }
+        report("append to catalog", n - 1, start);
+        made = null;
+        StringBuilder sink = new StringBuilder();
+        long bytes = allocated();
+        start = System.nanoTime();
+        for (String name : Utils.plainFilenamesIn(commits)) {
+            Commit commit = Commit.read(new File(commits, name), store);
+            sink.append(commit.getHash()).append(commit.getDate())
+                .append(commit.getLog());
+            sink.setLength(0);
+        }
+        report("read commit files", n, start);
+        reportAllocation(bytes);
+        for (int limit : new int[] {n, 20}) {
+            bytes = allocated();
+            start = System.nanoTime();
+            Iterator<CommitCatalog.Entry> entries =
+                new CommitCatalog(file, commits, store).newestFirst();
+            for (int k = 0; k < limit && entries.hasNext(); k += 1) {
+                CommitCatalog.Entry entry = entries.next();
+                sink.append(entry.getId().toHex()).append(entry.getDate())
+                    .append(entry.getMessage());
+                sink.setLength(0);
+            }
+            report("catalog, limit " + limit, limit, start);
+            reportAllocation(bytes);
+        }
+        store.close();
+    }
+
+    /** Time printing N log entries to /dev/null through a stream set
+     *  up as System.out is, which flushes on every line, and through an
+     *  OutputBuffer in front of it, unpaged and paged by 50 lines. */
+    static void print(int n) throws IOException {
+        String hash = Utils.sha1("print");
+        String date = "Thu Jan 01 00:00:00 1970 -0800";
+        for (int page : new int[] {-1, 0, 50}) {
+            PrintStream stdout = new PrintStream(new BufferedOutputStream(
+                    new FileOutputStream("/dev/null")), true);
+            PrintStream out = page < 0 ? stdout
+                : new PrintStream(new OutputBuffer(stdout, page));
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                out.println("===");
+                out.println("commit " + hash);
+                out.println("Date: " + date);
+                out.println("Commit number " + i);
+                out.println();
+            }
+            out.flush();
+            report(page < 0 ? "println, autoflush"
+                   : page == 0 ? "buffered" : "buffered, page " + page,
+                   n, start);
+            stdout.close();
+        }
+    }
+
+    /** Time resolving abbreviated ids among N commit files by listing
+     *  the directory, as getShortID once did, and through an IdIndex,
+     *  both when rebuilding it and once it exists. */
+    static void shortId(int n) throws IOException {
+        File root = tempDir("commits");
+        File commits = new File(root, "commits");
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String hash = Utils.sha1(Integer.toString(i));
+            new File(commits, hash + ".txt").createNewFile();
+            hashes.add(hash);
+        }
+        final int queries = 100;
+        long start = System.nanoTime();
+        int found = 0;
+        for (int q = 0; q < queries; q += 1) {
+            String prefix = hashes.get(q * (n / queries)).substring(0, 8);
+            for (String name : Utils.plainFilenamesIn(commits)) {
+                if (name.startsWith(prefix)) {
+                    found += 1;
+                    break;
+                }
+            }
+        }
+        report("list directory", queries, start);
+        File file = new File(root, "commit-ids");
+        start = System.nanoTime();
+        new IdIndex(file, commits).size();
+        report("rebuild index", n, start);
+        start = System.nanoTime();
+        IdIndex index = new IdIndex(file, commits);
+        for (int q = 0; q < queries; q += 1) {
+            String prefix = hashes.get(q * (n / queries)).substring(0, 8);
+            found -= index.resolve(prefix, 2).size();
+        }
+        report("index lookup", queries, start);
+        if (found != 0) {
+            System.out.println("Results differ.");
+        }
+    }
+
+    /** Time writing N packed blobs, a quarter of them deltas, out as
+     *  files one at a time through get, as checkout once did, and with
+     *  a Materializer on 1, 2, 4, ... threads, up to gitlet.threads. */
+    static void materialize(int n) throws IOException {
+        File root = tempDir("packed", "work");
+        File packed = new File(root, "packed");
+        File work = new File(root, "work");
+        ObjectStore pack = new ObjectStore(packed);
+        Random rand = new Random(n);
+        List<ObjectId> ids = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        byte[] previous = null;
+        for (int i = 0; i < n; i += 1) {
+            byte[] contents = randomText(rand, 1024 + rand.nextInt(8192));
+            ObjectId base = null;
+            if (previous != null && i % 4 == 0) {
+                contents = Arrays.copyOf(previous, previous.length + 16);
+                base = ids.get(i - 1);
+            }
+            ObjectId id = ObjectId.of(contents);
+            pack.put(id, contents, base);
+            ids.add(id);
+            files.add(new File(work, "f" + i));
+            previous = contents;
+        }
+        pack.close();
+
+        long start = System.nanoTime();
+        ObjectStore store = new ObjectStore(packed);
+        for (int i = 0; i < n; i += 1) {
+            Utils.writeContents(files.get(i), store.get(ids.get(i)));
+        }
+        store.close();
+        report("write one at a time", n, start);
+        int max = Hasher.threads();
+        for (int threads = 1; ; threads = Math.min(2 * threads, max)) {
+            start = System.nanoTime();
+            store = new ObjectStore(packed);
+            new Materializer(store, null, threads).write(files, ids);
+            store.close();
+            report("materialize " + threads + " threads", n, start);
+            if (threads == max) {
+                break;
+            }
+        }
+    }
+
+    /** Time checking out, back and forth, two branches whose N-file
+     *  trees differ in 3 files.  Since Main works in the current
+     *  directory, the repository is built and timed by a child JVM
+     *  running switchInRepo in a fresh directory. */
+    static void switchBranches(int n) throws IOException {
+        File root = tempDir();
+        ProcessBuilder child = new ProcessBuilder(javaCommand(List.of(),
+                Bench.class, "switch-in-repo", Integer.toString(n)));
+        child.directory(root).inheritIO();
+        try {
+            child.start().waitFor();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Time N runs of status in a small repository: each by a new
+     *  JVM running the command itself, by a new JVM handing it to a
+     *  daemon, and by this JVM handing it to the daemon, which is the
+     *  cost a client that starts instantly would see. */
+    static void daemon(int n) throws IOException {
+        File root = tempDir();
+        runMain(root, "init");
+        for (int i = 0; i < 20; i += 1) {
+            Utils.writeContents(new File(root, "f" + i), "file " + i);
+            runMain(root, "add", "f" + i);
+        }
+        runMain(root, "commit", "twenty files");
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            runMain(root, "status");
+        }
+        report("new JVM, no daemon", n, start);
+        File socket = new File(root, Daemon.SOCKET);
+        Process server = new ProcessBuilder(
+            javaCommand(List.of(), Main.class, "daemon")).directory(root)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        PrintStream stdout = System.out;
+        try {
+            for (int wait = 0; !socket.exists() && wait < 1000; wait += 1) {
+                Thread.sleep(10);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                runMain(root, "status");
+            }
+            report("new JVM, daemon", n, start);
+            for (int pass = 0; pass < 2; pass += 1) {
+                System.setOut(
+                        new PrintStream(OutputStream.nullOutputStream()));
+                start = System.nanoTime();
+                for (int i = 0; i < 10 * n; i += 1) {
+                    Daemon.forward(socket, "status");
+                }
+                System.setOut(stdout);
+                report("this JVM, daemon", 10 * n, start);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            System.setOut(stdout);
+            server.destroy();
+        }
+    }
+
+    /** Time init, adding N files and a commit, run first as one new
+     *  JVM per command and then as one script given to batch. */
+    static void batch(int n) throws IOException {
+        File[] roots = new File[2];
+        StringBuilder script = new StringBuilder("init\n");
+        for (int k = 0; k < roots.length; k += 1) {
+            roots[k] = tempDir();
+            for (int i = 0; i < n; i += 1) {
+                Utils.writeContents(new File(roots[k], "f" + i), "file " + i);
+            }
+        }
+        long start = System.nanoTime();
+        runMain(roots[0], "init");
+        for (int i = 0; i < n; i += 1) {
+            runMain(roots[0], "add", "f" + i);
+            script.append("add f").append(i).append('\n');
+        }
+        runMain(roots[0], "commit", "many files");
+        report("one JVM per command", n + 2, start);
+        script.append("commit \"many files\"\n");
+        Utils.writeContents(new File(roots[1], "script"), script.toString());
+        start = System.nanoTime();
+        runMain(roots[1], "batch", "script");
+        report("one batch", n + 2, start);
+    }
+
+    /** The commands timed by startup and run by train, in order. */
+    private static final String[][] COMMON_COMMANDS = {
+        {"init"}, {"add", "f.txt"}, {"commit", "add f"}, {"status"},
+        {"log"}, {"global-log"}, {"find", "add f"}, {"branch", "b"},
+        {"checkout", "b"}, {"checkout", "master"},
+    };
+
+    /** Time to the first byte of output, or to exit if there is none,
+     *  of each of COMMON_COMMANDS run in a new JVM, N times over, each
+     *  time in a new repository.  The JVMs run with the class path of
+     *  this one and the options in the property gitlet.startupFlags, so
+     *  that, for example,
+     *      java -Dgitlet.startupFlags="-XX:SharedArchiveFile=gitlet.jsa
+     *           -XX:TieredStopAtLevel=1" -cp gitlet.jar gitlet.Bench startup
+     *  times the fast-start mode built by "make fast". */
+    static void startup(int n) throws IOException {
+        String flags = System.getProperty("gitlet.startupFlags", "").trim();
+        long[] first = new long[COMMON_COMMANDS.length];
+        long[] total = new long[COMMON_COMMANDS.length];
+        for (int round = 0; round < n; round += 1) {
+            File root = tempDir();
+            Utils.writeContents(new File(root, "f.txt"), "f\n");
+            for (int c = 0; c < COMMON_COMMANDS.length; c += 1) {
+                List<String> command = javaCommand(flags.isEmpty()
+                        ? List.of() : Arrays.asList(flags.split("\\s+")),
+                        Main.class, COMMON_COMMANDS[c]);
+                long start = System.nanoTime();
+                Process child = new ProcessBuilder(command).directory(root)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                InputStream out = child.getInputStream();
+                out.read();
+                first[c] += System.nanoTime() - start;
+                out.transferTo(OutputStream.nullOutputStream());
+                try {
+                    child.waitFor();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                total[c] += System.nanoTime() - start;
+            }
+        }
+        for (int c = 0; c < COMMON_COMMANDS.length; c += 1) {
+            String name = String.join(" ", COMMON_COMMANDS[c]);
+            System.out.printf("%-24s %10.1f ms to output %10.1f ms in all%n",
+                    name, first[c] / 1e6 / n, total[c] / 1e6 / n);
+        }
+    }
+
+    /** Run each of COMMON_COMMANDS through Main in the current
+     *  directory, which should not hold a repository. */
+    static void train() {
+        Utils.writeContents(new File("f.txt"), "f\n");
+        for (String[] command : COMMON_COMMANDS) {
+            Main.main(command);
+        }
+    }
+
+    /** Build in the current directory a repository whose branches
+     *  master and other have N files, 3 of them different, and time
+     *  checking out each in turn against rewriting every file. */
+    static void switchInRepo(int n) {
+        Main.main("init");
+        ObjectStore store = new ObjectStore(new File(".gitlet/commits/blobs"));
+        Random rand = new Random(n);
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (int i = 0; i < n; i += 1) {
+            byte[] contents = randomText(rand, 256 + rand.nextInt(2048));
+            Utils.writeContents(new File("f" + i), contents);
+            blobs.put("f" + i, store.put(contents));
+        }
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (int i = 0; i < 3; i += 1) {
+            changes.put("f" + rand.nextInt(n),
+                    store.put(randomText(rand, 1024)));
+        }
+        String init = Utils.readContentsAsString(
+                new File(".gitlet/branches/master.txt"));
+        String tree = Tree.update(store, null, blobs);
+        String master = commitForBench(store, tree, init);
+        String other = commitForBench(store,
+                Tree.update(store, tree, changes), master);
+        store.close();
+        Utils.writeContents(new File(".gitlet/branches/master.txt"), master);
+        Utils.writeContents(new File(".gitlet/branches/other.txt"), other);
+        StatCache index = new StatCache(new File(".gitlet/staging/index"));
+        List<File> files = new ArrayList<>();
+        for (String name : blobs.keySet()) {
+            files.add(new File(name));
+        }
+        Hasher.hashAll(files, index);
+        index.save();
+        for (int pass = 0; pass < 3; pass += 1) {
+            long start = System.nanoTime();
+            Main.main("checkout", "other");
+            report("checkout other", n, start);
+            start = System.nanoTime();
+            Main.main("checkout", "master");
+            report("checkout master", n, start);
+        }
+        long start = System.nanoTime();
+        store = new ObjectStore(new File(".gitlet/commits/blobs"));
+        for (java.util.Map.Entry<String, String> blob : blobs.entrySet()) {
+            Utils.writeContents(new File(blob.getKey()),
+                    store.get(blob.getValue()));
+        }
+        store.close();
+        report("rewrite every file", n, start);
+    }
+
+    /** Make N commits, each adding one small file, in a new repository
+     *  in the current directory, first with syncing turned off and then
+     *  with it on, and report commits per second and syncs per commit
+     *  for each. */
+    static void durability(int n) {
+        Main.main("init");
+        for (boolean durable : new boolean[] {false, true}) {
+            System.setProperty("gitlet.durable", String.valueOf(durable));
+            long syncs = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                String name = (durable ? "on" : "off") + i;
+                Utils.writeContents(new File(name), name + "\n");
+                Main.main("add", name);
+                syncs += Stats.get("disk.syncs");
+                Main.main("commit", name);
+                syncs += Stats.get("disk.syncs");
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("durability %-3s %10.1f commits/s %6.1f "
+                    + "syncs/commit%n", durable ? "on" : "off",
+                    n / seconds, (double) syncs / n);
+        }
+        System.clearProperty("gitlet.durable");
+    }
+
+    /** Write to the repository in the current directory a commit of the
+     *  tree TREE in STORE with parent PARENT, and return its hash. */
+    private static String commitForBench(ObjectStore store, String tree,
+                                         String parent) {
+        Commit commit = new Commit("bench", tree, parent, store);
+        commit.write(new File(".gitlet/commits/" + commit.getHash()
+                + ".txt"));
+        return commit.getHash();
+    }
+
+    /** Return the number of bytes allocated so far by this thread, or 0
+     *  if the JVM does not say. */
+    static long allocated() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /** Print the bytes allocated by this thread since allocated()
+     *  returned BYTES. */
+    static void reportAllocation(long bytes) {
+        System.out.printf("%-24s %10.1f MB allocated%n", "",
+                (allocated() - bytes) / 1e6);
+    }
+
+    /** Print the time since START (from System.nanoTime) taken by a
+     *  case named NAME that handled N items. */
+    static void report(String name, int n, long start) {
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-24s %10d items %10.1f ms %10.2f us/item%n",
+                name, n, millis, 1000 * millis / Math.max(n, 1));
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/** The setup shared by the cases of Bench: fresh directories, synthetic
+ *  histories, files and text, and commands run in new JVMs.
+ *  @author Sasha L.
+ */
+class BenchSetup {
+
+    /** Return a new temporary directory holding empty directories named
+     *  SUBDIRS. */
+    static File tempDir(String... subdirs) throws IOException {
+        File root = Files.createTempDirectory("gitlet-bench").toFile();
+        for (String sub : subdirs) {
+            new File(root, sub).mkdir();
+        }
+        return root;
+    }
+
+    /** Write to COMMITS a line of N commits of the empty tree in STORE,
+     *  each the parent of the next, the Ith with message MESSAGE(I), and
+     *  return them, oldest first. */
+    static List<Commit> commitLine(File commits, ObjectStore store, int n,
+                                   IntFunction<String> message) {
+        String tree = Tree.update(store, null, new TreeMap<>());
+        List<Commit> result = new ArrayList<>(n);
+        String parent = null;
+        for (int i = 0; i < n; i += 1) {
+            Commit commit = new Commit(message.apply(i), tree, parent, store);
+            commit.write(new File(commits, commit.getHash() + ".txt"));
+            result.add(commit);
+            parent = commit.getHash();
+        }
+        return result;
+    }
+
+    /** Return a copy of LINES with COUNT lines, chosen by RAND, replaced
+     *  by edited lines or, if REMOVE, each either replaced or removed at
+     *  random. */
+    static List<String> edit(List<String> lines, Random rand, int count,
+                             boolean remove) {
+        List<String> result = new ArrayList<>(lines);
+        for (int i = 0; i < count; i += 1) {
+            int at = rand.nextInt(result.size());
+            if (!remove || rand.nextBoolean()) {
+                result.set(at, "edited " + i);
+            } else {
+                result.remove(at);
+            }
+        }
+        return result;
+    }
+
+    /** Return N lines drawn from RAND, each one of DISTINCT possible
+     *  lines, and each starting with the same WIDTH characters. */
+    static List<String> randomLines(Random rand, int n, int distinct,
+                                    int width) {
+        String indent = "    " + "x".repeat(width);
+        List<String> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            result.add(indent + " line number " + rand.nextInt(distinct));
+        }
+        return result;
+    }
+
+    /** Return LEN bytes of random lower-case text broken into lines,
+     *  drawn from RAND. */
+    static byte[] randomText(Random rand, int len) {
+        byte[] result = new byte[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = rand.nextInt(40) == 0
+                ? (byte) '\n' : (byte) ('a' + rand.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return the command running the main program of class MAIN with
+     *  arguments ARGS in a new JVM with this one's class path and the
+     *  JVM options FLAGS. */
+    static List<String> javaCommand(List<String> flags, Class<?> main,
+                                    String... args) {
+        List<String> result = new ArrayList<>();
+        result.add(new File(System.getProperty("java.home"), "bin/java")
+                   .getPath());
+        result.addAll(flags);
+        result.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                main.getName()));
+        result.addAll(Arrays.asList(args));
+        return result;
+    }
+
+    /** Run gitlet.Main with arguments ARGS in a new JVM in directory DIR,
+     *  discarding its output, and wait for it to finish. */
+    static void runMain(File dir, String... args) throws IOException {
+        ProcessBuilder child =
+            new ProcessBuilder(javaCommand(List.of(), Main.class, args));
+        child.directory(dir).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            child.start().waitFor();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
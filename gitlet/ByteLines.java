@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * The lines of a buffer of bytes, such as a memory-mapped file, split
+ * as Files.readAllLines splits them: at "\n", "\r\n" or "\r", with no
+ * empty line after a final terminator.  Only the bounds of the lines are
+ * kept on the heap.  A line is decoded from UTF-8 into a String only
+ * when get asks for it, and lines can be hashed and compared as bytes.
+ *
+ * @author Sasha L.
+ */
+class ByteLines extends AbstractList<String> {
+    /**
+     * The bytes being split.
+     */
+    private final ByteBuffer bytes;
+    /**
+     * Offsets in bytes of the start of each line, and of the end of
+     * each line's contents (before its terminator).
+     */
+    private int[] starts, ends;
+    /**
+     * Number of lines.
+     */
+    private int count;
+
+    /**
+     * The lines of the bytes of CONTENTS between its position and its
+     * limit.
+     */
+    ByteLines(ByteBuffer contents) {
+        bytes = contents.slice();
+        starts = new int[16];
+        ends = new int[16];
+        int n = bytes.limit();
+        int start = 0;
+        for (int i = 0; i < n; i += 1) {
+            byte b = bytes.get(i);
+            if (b == '\n' || b == '\r') {
+                add(start, i);
+                if (b == '\r' && i + 1 < n && bytes.get(i + 1) == '\n') {
+                    i += 1;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < n) {
+            add(start, n);
+        }
+    }
+
+    /**
+     * The lines of CONTENTS, or no lines if CONTENTS is null.
+     */
+    ByteLines(byte[] contents) {
+        this(ByteBuffer.wrap(contents == null ? new byte[0] : contents));
+    }
+
+    /**
+     * Return the lines of FILE, which is memory-mapped rather than
+     * read, or no lines if FILE is null.  Throws a GitletException if
+     * FILE cannot be read.
+     */
+    static ByteLines map(File file) {
+        if (file == null) {
+            return new ByteLines(ByteBuffer.allocate(0));
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw Utils.error("File %s is too large to compare.",
+                        file.getPath());
+            }
+            return new ByteLines(
+                    in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", file.getPath(),
+                    excp.getMessage());
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Return line K, decoded from UTF-8.
+     */
+    @Override
+    public String get(int k) {
+        checkIndex(k);
+        byte[] line = new byte[ends[k] - starts[k]];
+        bytes.get(starts[k], line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return a hash of the bytes of line K.
+     */
+    int hash(int k) {
+        checkIndex(k);
+        int h = 0;
+        for (int i = starts[k]; i < ends[k]; i += 1) {
+            h = 31 * h + bytes.get(i);
+        }
+        return h;
+    }
+
+    /**
+     * Return true iff line K has the same bytes as line J of OTHER.
+     */
+    boolean sameLine(int k, ByteLines other, int j) {
+        checkIndex(k);
+        other.checkIndex(j);
+        int len = ends[k] - starts[k];
+        if (len != other.ends[j] - other.starts[j]) {
+            return false;
+        }
+        for (int i = 0; i < len; i += 1) {
+            if (bytes.get(starts[k] + i)
+                    != other.bytes.get(other.starts[j] + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true iff lines [K0 .. K1-1] have the same bytes as lines
+     * [J0 .. J1-1] of OTHER.
+     */
+    boolean sameLines(int k0, int k1, ByteLines other, int j0, int j1) {
+        if (k1 - k0 != j1 - j0) {
+            return false;
+        }
+        for (int i = 0; k0 + i < k1; i += 1) {
+            if (!sameLine(k0 + i, other, j0 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true iff line K is followed by a line terminator.  Only the
+     * last line may lack one.
+     */
+    boolean terminated(int k) {
+        checkIndex(k);
+        return k + 1 < count || ends[k] < bytes.limit();
+    }
+
+    /**
+     * Write lines [FROM .. TO-1], with their terminators, to OUT.
+     */
+    void write(int from, int to, OutputStream out) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        int start = starts[from];
+        int end = to < count ? starts[to] : bytes.limit();
+        if (bytes.hasArray()) {
+            out.write(bytes.array(), bytes.arrayOffset() + start,
+                    end - start);
+        } else {
+            byte[] buf = new byte[Math.min(end - start, 1 << 16)];
+            for (int i = start; i < end; i += buf.length) {
+                int n = Math.min(buf.length, end - i);
+                bytes.get(i, buf, 0, n);
+                out.write(buf, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Record a line whose contents are the bytes [START .. END-1].
+     */
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * count);
+            ends = Arrays.copyOf(ends, 2 * count);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count += 1;
+    }
+
+    /**
+     * Throw IndexOutOfBoundsException unless K is a line number.
+     */
+    private void checkIndex(int k) {
+        if (k < 0 || k >= count) {
+            throw new IndexOutOfBoundsException("line " + k);
+        }
+    }
+}
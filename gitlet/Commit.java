@@ -1,19 +1,74 @@
 package gitlet;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 import java.util.TreeMap;
 import java.io.Serializable;
 
 /**
+ * A commit.  Commits are stored in a compact binary format: a magic
+ * number, a format version, the commit's own hash, and then the hashed
+ * body, which holds the parent, message, date, the hash of the root
+ * Tree of the snapshot and, for a merge, the second parent, with
+ * length-prefixed strings and raw UID_BYTES hashes.  Commits written by
+ * earlier versions, which carry their whole blob map, either in version
+ * 1 of the format or with Java serialization, are still readable, as
+ * are version 2 commits, which have no second parent.
+ *
  * @author Sasha L.
  */
 public class Commit implements Serializable {
+    /**
+     * The implicit serialVersionUID of the class as it was when it was
+     * stored with Java serialization, so that such files stay readable.
+     */
+    private static final long serialVersionUID = 4657462554884009704L;
+    /**
+     * Magic number that starts an encoded commit ("GCMT").
+     */
+    private static final int MAGIC = 0x47434d54;
+    /**
+     * Current encoding version.
+     */
+    private static final int VERSION = 3;
+    /**
+     * Format of commit dates.
+     */
+    static final String DATE_FORMAT = "EEE MMM dd kk:mm:ss yyyy XX";
+    /**
+     * English abbreviations of the days of the week, from Sunday, and of
+     * the months, from January, as DATE_FORMAT gives them.
+     */
+    private static final String[] DAYS = {
+        "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat",
+    }, MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+        "Jul", "Aug", "Sep", "Oct", "Nov", "Dec",
+    };
+    /**
+     * MONTHS, as a list.
+     */
+    private static final List<String> MONTHS_LIST = Arrays.asList(MONTHS);
     /**
      * Parents Hash.
      */
     private String parentHash;
+    /**
+     * Hash of the merged-in parent, or null if this is not a merge.
+     */
+    private String secondParentHash;
     /**
      * Own Hash.
      */
@@ -23,34 +78,265 @@ public class Commit implements Serializable {
      */
     private String logMessage;
     /**
-     * Map of blobs.
+     * Map of blobs.  Read lazily from tree when that is not null.
      */
     private TreeMap<String, String> blobs;
+    /**
+     * Hash of the root tree, or null for commits from before trees.
+     */
+    private String tree;
+    /**
+     * Store holding tree.
+     */
+    private transient ObjectStore store;
     /**
      * Date of Commit.
      */
     private String date;
+    /**
+     * Time of this commit in seconds since the epoch, or null until it
+     * is first needed for a commit that was read.
+     */
+    private transient Long time;
+
+    public Commit(String log, String rootTree, String parent,
+                  ObjectStore objects) {
+        this(log, rootTree, parent, null, objects);
+    }
 
-    public Commit(String log,
-                  TreeMap<String, String> inputBlobs, String parent) {
+    /**
+     * A commit with message LOG of the snapshot whose root tree is
+     * ROOTTREE, in OBJECTS, with first parent PARENT and, for a merge,
+     * second parent SECONDPARENT (otherwise null).
+     */
+    public Commit(String log, String rootTree, String parent,
+                  String secondParent, ObjectStore objects) {
         logMessage = log;
         parentHash = parent;
-        blobs = inputBlobs;
-        if (parent == null) {
-            date = new SimpleDateFormat(
-                    "EEE MMM dd kk:mm:ss yyyy XX").format(new Date(0));
+        secondParentHash = secondParent;
+        tree = rootTree;
+        store = objects;
+        long millis = parent == null ? 0 : System.currentTimeMillis();
+        time = millis / 1000;
+        date = formatDate(millis);
+        hash = Utils.sha1(encodeBody());
+
+    }
+
+    /**
+     * Return MILLIS, in milliseconds since the epoch, formatted in the
+     * default time zone as by DATE_FORMAT.  In a US English locale, the
+     * fields are worked out here, since the locale data that
+     * SimpleDateFormat loads on first use take longer than the rest of
+     * making a commit.
+     */
+    static String formatDate(long millis) {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (!locale.equals(Locale.US) && !locale.equals(Locale.ENGLISH)) {
+            return new SimpleDateFormat(DATE_FORMAT).format(new Date(millis));
+        }
+        int offset = TimeZone.getDefault().getOffset(millis);
+        long seconds = Math.floorDiv(millis + offset, 1000L);
+        long days = Math.floorDiv(seconds, 86400L);
+        int secondOfDay = (int) Math.floorMod(seconds, 86400L);
+        long shifted = days + 719468;
+        long era = Math.floorDiv(shifted, 146097L);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                          - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4
+                                     - yearOfEra / 100);
+        long marchMonth = (5 * dayOfYear + 2) / 153;
+        long dayOfMonth = dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+        int month = (int) (marchMonth < 10 ? marchMonth + 2 : marchMonth - 10);
+        long year = yearOfEra + era * 400 + (month < 2 ? 1 : 0);
+        int hour = secondOfDay / 3600;
+        StringBuilder result = new StringBuilder(32);
+        result.append(DAYS[(int) Math.floorMod(days + 4, 7L)]).append(' ')
+            .append(MONTHS[month]).append(' ');
+        pad(result, dayOfMonth, 2).append(' ');
+        pad(result, hour == 0 ? 24 : hour, 2).append(':');
+        pad(result, secondOfDay / 60 % 60, 2).append(':');
+        pad(result, secondOfDay % 60, 2).append(' ');
+        pad(result, year, 4).append(' ');
+        if (offset == 0) {
+            return result.append('Z').toString();
+        }
+        int minutes = Math.abs(offset) / 60000;
+        result.append(offset < 0 ? '-' : '+');
+        return pad(pad(result, minutes / 60, 2), minutes % 60, 2).toString();
+    }
+
+    /**
+     * Return the time, in seconds since the epoch, given by DATE, which
+     * is in the form DATE_FORMAT gives.  Dates in English are read here,
+     * for the same reason as in formatDate.
+     */
+    static long parseDate(String date) {
+        String[] fields = date.split("[ :]");
+        int month = fields.length == 8 ? MONTHS_LIST.indexOf(fields[1]) : -1;
+        if (month >= 0 && fields[7].matches("Z|[-+]\\d{4}")) {
+            try {
+                long year = Long.parseLong(fields[6]);
+                long y = month < 2 ? year - 1 : year;
+                long era = Math.floorDiv(y, 400L);
+                long yearOfEra = y - era * 400;
+                long dayOfYear = (153 * (month < 2 ? month + 10 : month - 2)
+                                  + 2) / 5 + Long.parseLong(fields[2]) - 1;
+                long dayOfEra = yearOfEra * 365 + yearOfEra / 4
+                    - yearOfEra / 100 + dayOfYear;
+                long days = era * 146097 + dayOfEra - 719468;
+                long offset = 0;
+                if (!fields[7].equals("Z")) {
+                    offset = (Long.parseLong(fields[7].substring(1, 3)) * 60
+                              + Long.parseLong(fields[7].substring(3))) * 60;
+                    offset = fields[7].charAt(0) == '-' ? -offset : offset;
+                }
+                return days * 86400
+                    + Long.parseLong(fields[3]) % 24 * 3600
+                    + Long.parseLong(fields[4]) * 60
+                    + Long.parseLong(fields[5]) - offset;
+            } catch (NumberFormatException excp) {
+                return parseWithFormat(date);
+            }
+        }
+        return parseWithFormat(date);
+    }
+
+    /**
+     * Return the time, in seconds since the epoch, given by DATE, as
+     * read by SimpleDateFormat with DATE_FORMAT.
+     */
+    private static long parseWithFormat(String date) {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(date).getTime()
+                / 1000;
+        } catch (ParseException excp) {
+            throw new IllegalArgumentException("malformed date: " + date);
+        }
+    }
+
+    /**
+     * Append N to RESULT, with leading zeros to make at least WIDTH
+     * digits, and return RESULT.
+     */
+    private static StringBuilder pad(StringBuilder result, long n,
+                                     int width) {
+        String digits = Long.toString(n);
+        for (int k = digits.length(); k < width; k += 1) {
+            result.append('0');
+        }
+        return result.append(digits);
+    }
+
+    /**
+     * A commit with hash HASH decoded from IN, which holds a body
+     * written by encodeBody in encoding version VERSION.
+     */
+    private Commit(String hash, int version, DataInputStream in)
+        throws IOException {
+        this.hash = hash;
+        parentHash = in.readBoolean() ? Utils.readId(in) : null;
+        logMessage = Utils.readString(in);
+        date = Utils.readString(in);
+        if (version == 1) {
+            blobs = new TreeMap<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = Utils.readString(in);
+                blobs.put(name, Utils.readId(in));
+            }
+        } else {
+            tree = Utils.readId(in);
+        }
+        if (version >= 3 && in.readBoolean()) {
+            secondParentHash = Utils.readId(in);
+        }
+    }
+
+    /**
+     * Return the commit stored in FILE, in any of the encodings or Java
+     * serialization, whose trees are in STORE.
+     */
+    public static Commit read(File file, ObjectStore store) {
+        byte[] contents = Utils.readContents(file);
+        Commit result;
+        if (Utils.isSerialized(contents)) {
+            result = Utils.readObject(file, Commit.class);
         } else {
-            date = new SimpleDateFormat(
-                    "EEE MMM dd kk:mm:ss yyyy XX").format(new Date());
+            try {
+                DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(contents));
+                int version;
+                if (in.readInt() != MAGIC) {
+                    throw Utils.error("Corrupt commit %s.", file.getName());
+                }
+                version = in.readInt();
+                if (version < 1 || version > VERSION) {
+                    throw Utils.error("Corrupt commit %s.", file.getName());
+                }
+                result = new Commit(Utils.readId(in), version, in);
+            } catch (IOException | NegativeArraySizeException excp) {
+                throw Utils.error("Corrupt commit %s.", file.getName());
+            }
         }
-        hash = Utils.sha1(Utils.serialize(this));
+        result.store = store;
+        return result;
+    }
 
+    /**
+     * Write this commit to FILE in the current encoding.
+     */
+    public void write(File file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Utils.writeId(out, hash);
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        Utils.writeContents(file, bytes.toByteArray(), encodeBody());
+    }
+
+    /**
+     * Return the encoding of everything in this commit but its hash.
+     */
+    private byte[] encodeBody() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeBoolean(parentHash != null);
+            if (parentHash != null) {
+                Utils.writeId(out, parentHash);
+            }
+            Utils.writeString(out, logMessage);
+            Utils.writeString(out, date);
+            Utils.writeId(out, tree);
+            out.writeBoolean(secondParentHash != null);
+            if (secondParentHash != null) {
+                Utils.writeId(out, secondParentHash);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        return bytes.toByteArray();
     }
 
     public String getParent() {
         return parentHash;
     }
 
+    /**
+     * Return the hash of the merged-in parent, or null if this commit
+     * is not a merge.
+     */
+    public String getSecondParent() {
+        return secondParentHash;
+    }
+
     public String getLog() {
         return logMessage;
     }
@@ -63,7 +349,51 @@ public class Commit implements Serializable {
         return hash;
     }
 
+    /**
+     * Return the time of this commit in seconds since the epoch, parsing
+     * its date only for a commit that was read.
+     */
+    public long getTime() {
+        if (time == null) {
+            try {
+                time = parseDate(date);
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Corrupt date in commit %s.", hash);
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Return the hash of the root tree of this commit, first storing a
+     * tree for the blob map of a commit from before trees.
+     */
+    public String getTree() {
+        if (tree == null) {
+            tree = Tree.update(store, null, blobs);
+        }
+        return tree;
+    }
+
+    /**
+     * Return the blob hash of the file at PATH in this commit, or null
+     * if it has none, reading only the trees along PATH.
+     */
+    public String getBlob(String path) {
+        if (blobs != null) {
+            return blobs.get(path);
+        }
+        return Tree.lookup(store, tree, path);
+    }
+
+    /**
+     * Return the blob hashes of all files in this commit, by path.
+     */
     public TreeMap<String, String> getBlobs() {
+        if (blobs == null) {
+            blobs = new TreeMap<>();
+            Tree.flatten(store, tree, "", blobs);
+        }
         return blobs;
     }
 
@@ -0,0 +1,368 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static gitlet.Utils.UID_BYTES;
+
+/**
+ * An append-only catalog of what global-log shows of every commit: its
+ * id, parents, time, date and message.  The file holds a header (magic,
+ * version, and the offset just past the last complete record) and the
+ * records, oldest first, each followed by its length so that the
+ * catalog can be read backwards.  The header is updated after each
+ * record is written, so a record cut off by a crash is ignored.  The
+ * catalog is memory-mapped and read newest first, one record at a time,
+ * so listing the latest commits takes time and memory in proportion to
+ * the number listed, whatever the size of the history.  It is rebuilt
+ * from the commit directory if it is missing or corrupt.
+ *
+ * @author Sasha L.
+ */
+class CommitCatalog {
+    /**
+     * Magic number that starts a catalog file ("GCAT").
+     */
+    private static final int MAGIC = 0x47434154;
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of the header: magic, version, end offset.
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Flags marking records with a first and a second parent.
+     */
+    private static final int HAS_PARENT = 1, HAS_SECOND_PARENT = 2;
+
+    /**
+     * The catalog file.
+     */
+    private final File file;
+    /**
+     * Directory holding the commits, as COMMITID.txt.
+     */
+    private final File commitDir;
+    /**
+     * Store holding the commits' trees.
+     */
+    private final ObjectStore store;
+
+    /**
+     * A catalog kept in FILE of the commits in COMMITDIR, whose trees are
+     * in STORE.  Nothing is read until it is first used.
+     */
+    CommitCatalog(File file, File commitDir, ObjectStore store) {
+        this.file = file;
+        this.commitDir = commitDir;
+        this.store = store;
+    }
+
+    /**
+     * Append COMMIT, which has just been moved into the commit
+     * directory, to the catalog.  A missing or corrupt catalog is
+     * rebuilt instead, which takes in the commit.
+     */
+    void add(Commit commit) {
+        long end = end();
+        if (end < 0) {
+            rebuild();
+            return;
+        }
+        byte[] record = encode(commit);
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            writeFully(out, record, end);
+            out.truncate(end + record.length);
+            writeFully(out, header(end + record.length), 0);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit catalog: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the commits in the catalog, newest first, read lazily.
+     */
+    Iterator<Entry> newestFirst() {
+        long end = end();
+        if (end < 0) {
+            rebuild();
+            end = end();
+        }
+        if (end > Integer.MAX_VALUE) {
+            throw Utils.error("Commit catalog too large.");
+        }
+        MappedByteBuffer map;
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            map = in.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit catalog: %s",
+                    excp.getMessage());
+        }
+        final int last = (int) end;
+        return new Iterator<Entry>() {
+            private int pos = last;
+
+            @Override
+            public boolean hasNext() {
+                return pos > HEADER_SIZE;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int length = map.getInt(pos - 4);
+                pos -= 4 + length;
+                if (length < 0 || pos < HEADER_SIZE) {
+                    throw Utils.error("Corrupt commit catalog.");
+                }
+                return decode(map.slice(pos, length));
+            }
+        };
+    }
+
+    /**
+     * Return the offset just past the last complete record, or -1 if
+     * the catalog is missing or corrupt.
+     */
+    private long end() {
+        if (!file.isFile()) {
+            return -1;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()
+                    && in.read(header, header.position()) > 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC
+                    || header.getInt() != VERSION) {
+                return -1;
+            }
+            long end = header.getLong();
+            return end < HEADER_SIZE || end > in.size() ? -1 : end;
+        } catch (IOException excp) {
+            return -1;
+        }
+    }
+
+    /**
+     * Catalog every commit in commitDir, oldest first, and replace the
+     * catalog file.  The new file is written beside the old one and
+     * renamed over it.
+     */
+    private void rebuild() {
+        List<Commit> commits = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(commitDir);
+        for (String name : names == null ? List.<String>of() : names) {
+            commits.add(Commit.read(new File(commitDir, name), store));
+        }
+        commits.sort(Comparator.comparingLong(Commit::getTime)
+                     .thenComparing(Commit::getHash));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(header(0));
+        for (Commit commit : commits) {
+            bytes.writeBytes(encode(commit));
+        }
+        byte[] contents = bytes.toByteArray();
+        ByteBuffer.wrap(contents).put(header(contents.length));
+        File temp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit catalog: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Return a header for a catalog whose records end at END.
+     */
+    private static byte[] header(long end) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC)
+            .putInt(VERSION).putLong(end).array();
+    }
+
+    /**
+     * Return the record for COMMIT, followed by its length.
+     */
+    private static byte[] encode(Commit commit) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            ObjectId.fromHex(commit.getHash()).writeTo(out);
+            out.writeLong(commit.getTime());
+            String parent = commit.getParent();
+            String second = commit.getSecondParent();
+            out.writeByte((parent == null ? 0 : HAS_PARENT)
+                          | (second == null ? 0 : HAS_SECOND_PARENT));
+            if (parent != null) {
+                ObjectId.fromHex(parent).writeTo(out);
+            }
+            if (second != null) {
+                ObjectId.fromHex(second).writeTo(out);
+            }
+            Utils.writeString(out, commit.getDate());
+            Utils.writeString(out, commit.getLog());
+            out.writeInt(out.size());
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit catalog.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Return the entry whose record is RECORD.
+     */
+    private static Entry decode(ByteBuffer record) {
+        try {
+            ObjectId id = readId(record);
+            long time = record.getLong();
+            int flags = record.get();
+            ObjectId parent =
+                (flags & HAS_PARENT) != 0 ? readId(record) : null;
+            ObjectId second =
+                (flags & HAS_SECOND_PARENT) != 0 ? readId(record) : null;
+            String date = readString(record);
+            String message = readString(record);
+            return new Entry(id, parent, second, time, date, message);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException excp) {
+            throw Utils.error("Corrupt commit catalog.");
+        }
+    }
+
+    /**
+     * Return the id at the position of BUF, advancing past it.
+     */
+    private static ObjectId readId(ByteBuffer buf) {
+        byte[] raw = new byte[UID_BYTES];
+        buf.get(raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Return the string written by Utils.writeString at the position of
+     * BUF, advancing past it.
+     */
+    private static String readString(ByteBuffer buf) {
+        byte[] raw = new byte[buf.getInt()];
+        buf.get(raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write all of DATA to OUT at OFFSET.
+     */
+    private static void writeFully(FileChannel out, byte[] data,
+                                   long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long pos = offset;
+        while (buf.hasRemaining()) {
+            pos += out.write(buf, pos);
+        }
+    }
+
+    /**
+     * What the catalog holds about one commit.
+     */
+    static class Entry {
+        /**
+         * The commit's id, and those of its parents (null if absent).
+         */
+        private final ObjectId id, parent, secondParent;
+        /**
+         * The commit's time in seconds since the epoch.
+         */
+        private final long time;
+        /**
+         * The commit's date, as log prints it, and its message.
+         */
+        private final String date, message;
+
+        /**
+         * An entry for commit ID with parents PARENT and SECONDPARENT,
+         * made at TIME and printed with date DATE, with message MESSAGE.
+         */
+        Entry(ObjectId id, ObjectId parent, ObjectId secondParent,
+              long time, String date, String message) {
+            this.id = id;
+            this.parent = parent;
+            this.secondParent = secondParent;
+            this.time = time;
+            this.date = date;
+            this.message = message;
+        }
+
+        /**
+         * Return the commit's id.
+         */
+        ObjectId getId() {
+            return id;
+        }
+
+        /**
+         * Return the commit's first parent, or null.
+         */
+        ObjectId getParent() {
+            return parent;
+        }
+
+        /**
+         * Return the commit's second parent, or null if it is not a
+         * merge.
+         */
+        ObjectId getSecondParent() {
+            return secondParent;
+        }
+
+        /**
+         * Return the commit's time in seconds since the epoch.
+         */
+        long getTime() {
+            return time;
+        }
+
+        /**
+         * Return the commit's date, as log prints it.
+         */
+        String getDate() {
+            return date;
+        }
+
+        /**
+         * Return the commit's message.
+         */
+        String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the commit catalog and its file.
+ *  @author Sasha L.
+ */
+public class CommitCatalogTest {
+
+    /** Make N commits in COMMITDIR, with their trees in STORE, each the
+     *  parent of the next and the second a merge, adding each to CATALOG
+     *  as it is made.  Return them, oldest first. */
+    private static List<Commit> commits(File commitDir, ObjectStore store,
+                                        CommitCatalog catalog, int n) {
+        List<Commit> result = new ArrayList<>(
+                BenchSetup.commitLine(commitDir, store, 1, i -> "initial"));
+        catalog.add(result.get(0));
+        String tree = result.get(0).getTree();
+        for (int i = 1; i < n; i += 1) {
+            Commit parent = result.get(i - 1);
+            Commit commit = new Commit("commit " + i, tree, parent.getHash(),
+                    i == 1 ? parent.getHash() : null, store);
+            commit.write(new File(commitDir, commit.getHash() + ".txt"));
+            catalog.add(commit);
+            result.add(commit);
+        }
+        return result;
+    }
+
+    /** Check that CATALOG lists exactly COMMITS, newest first. */
+    private static void check(CommitCatalog catalog, List<Commit> commits) {
+        Iterator<CommitCatalog.Entry> entries = catalog.newestFirst();
+        for (int i = commits.size() - 1; i >= 0; i -= 1) {
+            Commit commit = commits.get(i);
+            assertTrue(entries.hasNext());
+            CommitCatalog.Entry entry = entries.next();
+            assertEquals(commit.getHash(), entry.getId().toHex());
+            assertEquals(commit.getLog(), entry.getMessage());
+            assertEquals(commit.getDate(), entry.getDate());
+            assertEquals(commit.getTime(), entry.getTime());
+            assertEquals(commit.getParent(), hex(entry.getParent()));
+            assertEquals(commit.getSecondParent(),
+                         hex(entry.getSecondParent()));
+        }
+        assertFalse(entries.hasNext());
+    }
+
+    /** Return the ids of the commits listed by CATALOG, sorted, and
+     *  each as often as it is listed. */
+    private static List<String> ids(CommitCatalog catalog) {
+        List<String> result = new ArrayList<>();
+        Iterator<CommitCatalog.Entry> entries = catalog.newestFirst();
+        while (entries.hasNext()) {
+            result.add(entries.next().getId().toHex());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the numeral of ID, or null if it is null. */
+    private static String hex(ObjectId id) {
+        return id == null ? null : id.toHex();
+    }
+
+    /** Commits appended one at a time are listed newest first, by this
+     *  catalog and the next. */
+    @Test
+    public void appendAndList() {
+        File dir = TestFiles.tempDir("commits");
+        File commitDir = new File(dir, "commits");
+        ObjectStore store = new ObjectStore(dir);
+        File file = new File(dir, "catalog");
+        CommitCatalog catalog = new CommitCatalog(file, commitDir, store);
+        List<Commit> commits = commits(commitDir, store, catalog, 6);
+        check(catalog, commits);
+        check(new CommitCatalog(file, commitDir, store), commits);
+    }
+
+    /** A damaged catalog still lists every commit once: records past
+     *  the last complete one are ignored, and a catalog that cannot be
+     *  read is rebuilt from the commits. */
+    @Test
+    public void damaged() {
+        File dir = TestFiles.tempDir("commits");
+        File commitDir = new File(dir, "commits");
+        ObjectStore store = new ObjectStore(dir);
+        File file = new File(dir, "catalog");
+        List<Commit> commits = commits(commitDir, store,
+                new CommitCatalog(file, commitDir, store), 4);
+        List<String> all = new ArrayList<>();
+        for (Commit commit : commits) {
+            all.add(commit.getHash());
+        }
+        Collections.sort(all);
+        TestFiles.eachDamage(file, () -> assertEquals(all,
+                ids(new CommitCatalog(file, commitDir, store))));
+    }
+}
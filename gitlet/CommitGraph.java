@@ -0,0 +1,434 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.UID_BYTES;
+
+/**
+ * A cache of the shape of the commit history, kept in one flat file so
+ * that history can be walked without reading commits.  Each commit has
+ * a position, and its record holds its id, the positions of its parents
+ * (-1 where absent), its generation number (1 for a root, otherwise one
+ * more than the largest generation of its parents) and its time in
+ * seconds.  Records are appended, parents before children, and the count
+ * in the header is updated last, so a record cut off by a crash is
+ * ignored.  The file is memory-mapped, and grows by doubling, so
+ * anything past the last counted record is unused.  A commit missing
+ * from the graph, such as one made by an earlier version, is added with
+ * its missing ancestors the first time it is asked for.
+ *
+ * @author Sasha L.
+ */
+class CommitGraph {
+    /**
+     * Magic number that starts a graph file ("GCGR").
+     */
+    private static final int MAGIC = 0x47434752;
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of the header: magic, version, count.
+     */
+    private static final int HEADER_SIZE = 12;
+    /**
+     * Size of one record: id, two parents, generation, time.
+     */
+    private static final int RECORD_SIZE = UID_BYTES + 4 + 4 + 4 + 8;
+    /**
+     * Offsets within a record of its fields.
+     */
+    private static final int PARENT1 = UID_BYTES, PARENT2 = PARENT1 + 4,
+        GENERATION = PARENT2 + 4, TIME = GENERATION + 4;
+    /**
+     * Marks of the commits reached from one or both starting points of
+     * mergeBase.
+     */
+    private static final int FROM_A = 1, FROM_B = 2, BOTH = 3;
+
+    /**
+     * The graph file.
+     */
+    private final File file;
+    /**
+     * Directory holding the commits, as COMMITID.txt.
+     */
+    private final File commitDir;
+    /**
+     * Store holding the commits' trees.
+     */
+    private final ObjectStore store;
+    /**
+     * Open channel on file, or null if not yet opened.
+     */
+    private FileChannel channel;
+    /**
+     * Mapping of file, or null if it is not yet mapped.
+     */
+    private MappedByteBuffer map;
+    /**
+     * Number of records.
+     */
+    private int count = -1;
+    /**
+     * Positions of all commits by id, or null until a lookup first
+     * misses.
+     */
+    private HashMap<ObjectId, Integer> positions;
+
+    /**
+     * A graph kept in FILE of the commits in COMMITDIR, whose trees are
+     * in STORE.  Nothing is read until the graph is first used.
+     */
+    CommitGraph(File file, File commitDir, ObjectStore store) {
+        this.file = file;
+        this.commitDir = commitDir;
+        this.store = store;
+    }
+
+    /**
+     * Return the number of commits in the graph.
+     */
+    int size() {
+        load();
+        return count;
+    }
+
+    /**
+     * Return the position of commit HASH, adding it and any of its
+     * ancestors not yet in the graph.
+     */
+    int add(String hash) {
+        ObjectId id = ObjectId.fromHex(hash);
+        int pos = position(id);
+        if (pos >= 0) {
+            return pos;
+        }
+        Deque<ObjectId> todo = new ArrayDeque<>();
+        todo.push(id);
+        while (!todo.isEmpty()) {
+            ObjectId top = todo.peek();
+            if (position(top) >= 0) {
+                todo.pop();
+                continue;
+            }
+            Commit commit = read(top);
+            List<String> parents = parents(commit);
+            int[] parentPos = new int[] { -1, -1 };
+            ObjectId missing = null;
+            for (int i = 0; i < parents.size(); i += 1) {
+                ObjectId parent = ObjectId.fromHex(parents.get(i));
+                parentPos[i] = position(parent);
+                if (parentPos[i] < 0) {
+                    missing = parent;
+                    break;
+                }
+            }
+            if (missing != null) {
+                todo.push(missing);
+            } else {
+                append(top, parentPos, commit.getTime());
+                todo.pop();
+            }
+        }
+        return position(id);
+    }
+
+    /**
+     * Append COMMIT, which has just been made and so cannot be in the
+     * graph yet, adding any of its ancestors not yet in the graph, and
+     * return its position.  Only its parents are looked up, and they are
+     * usually among the last few commits added.
+     */
+    int add(Commit commit) {
+        ObjectId id = ObjectId.fromHex(commit.getHash());
+        List<String> parents = parents(commit);
+        int[] parentPos = new int[] { -1, -1 };
+        for (int i = 0; i < parents.size(); i += 1) {
+            parentPos[i] = add(parents.get(i));
+        }
+        return append(id, parentPos, commit.getTime());
+    }
+
+    /**
+     * Return the position of commit ID, or -1 if it is not in the
+     * graph.  Recent commits, which are looked up most, are found by a
+     * scan from the end; only a commit older than that indexes every
+     * commit, once, for the lookups that follow.
+     */
+    int position(ObjectId id) {
+        load();
+        if (positions != null) {
+            return positions.getOrDefault(id, -1);
+        }
+        for (int k = count - 1; k >= 0 && k >= count - 64; k -= 1) {
+            if (id(k).equals(id)) {
+                return k;
+            }
+        }
+        positions = new HashMap<>();
+        for (int k = 0; k < count; k += 1) {
+            positions.put(id(k), k);
+        }
+        return positions.getOrDefault(id, -1);
+    }
+
+    /**
+     * Return the id of the commit at POS.
+     */
+    ObjectId id(int pos) {
+        byte[] raw = new byte[UID_BYTES];
+        map().get(offset(pos), raw, 0, UID_BYTES);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Return the position of the first parent of the commit at POS, or
+     * -1 if it has none.
+     */
+    int parent(int pos) {
+        return map().getInt(offset(pos) + PARENT1);
+    }
+
+    /**
+     * Return the position of the second parent of the commit at POS, or
+     * -1 if it has none.
+     */
+    int secondParent(int pos) {
+        return map().getInt(offset(pos) + PARENT2);
+    }
+
+    /**
+     * Return the generation number of the commit at POS.
+     */
+    int generation(int pos) {
+        return map().getInt(offset(pos) + GENERATION);
+    }
+
+    /**
+     * Return the time of the commit at POS, in seconds since the epoch.
+     */
+    long time(int pos) {
+        return map().getLong(offset(pos) + TIME);
+    }
+
+    /**
+     * Return true iff the commit at ANCESTOR is the commit at POS or one
+     * of its ancestors.  Commits with generations below that of
+     * ANCESTOR cannot lead to it and are not explored.
+     */
+    boolean isAncestor(int ancestor, int pos) {
+        int floor = generation(ancestor);
+        HashSet<Integer> seen = new HashSet<>();
+        Deque<Integer> todo = new ArrayDeque<>();
+        todo.push(pos);
+        while (!todo.isEmpty()) {
+            int k = todo.pop();
+            if (k == ancestor) {
+                return true;
+            }
+            if (k < 0 || generation(k) <= floor || !seen.add(k)) {
+                continue;
+            }
+            todo.push(parent(k));
+            todo.push(secondParent(k));
+        }
+        return false;
+    }
+
+    /**
+     * Return the position of a latest common ancestor of the commits at
+     * A and B: one with the largest generation number.  The searches
+     * down from A and from B advance together, always expanding the
+     * commit of highest generation on either frontier.  Since a commit's
+     * generation exceeds its parents', every descendant of a commit is
+     * expanded before it, so the first commit found to be reached from
+     * both sides is the answer, and only commits made since the fork
+     * (and any whose generations are no lower) are visited.
+     */
+    int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        HashMap<Integer, Integer> reached = new HashMap<>();
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(
+                (x, y) -> Integer.compare(generation(y), generation(x)));
+        reached.put(a, FROM_A);
+        reached.put(b, FROM_B);
+        frontier.add(a);
+        frontier.add(b);
+        HashSet<Integer> expanded = new HashSet<>();
+        while (!frontier.isEmpty()) {
+            int k = frontier.poll();
+            int sides = reached.get(k);
+            if (sides == BOTH) {
+                return k;
+            }
+            if (!expanded.add(k)) {
+                continue;
+            }
+            for (int p : new int[] { parent(k), secondParent(k) }) {
+                if (p < 0) {
+                    continue;
+                }
+                Integer old = reached.get(p);
+                int now = old == null ? sides : old | sides;
+                if (old == null || now != old) {
+                    reached.put(p, now);
+                    frontier.add(p);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Release the graph file.
+     */
+    void close() {
+        map = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException excp) {
+                throw Utils.error("Cannot close commit graph: %s",
+                        excp.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Return the parents of COMMIT, first parent first.
+     */
+    private static List<String> parents(Commit commit) {
+        List<String> result = new ArrayList<>();
+        if (commit.getParent() != null) {
+            result.add(commit.getParent());
+        }
+        if (commit.getSecondParent() != null) {
+            result.add(commit.getSecondParent());
+        }
+        return result;
+    }
+
+    /**
+     * Return the commit ID, read from commitDir.
+     */
+    private Commit read(ObjectId id) {
+        File commitFile = new File(commitDir, id.toHex() + ".txt");
+        if (!commitFile.isFile()) {
+            throw Utils.error("No commit %s.", id);
+        }
+        return Commit.read(commitFile, store);
+    }
+
+    /**
+     * Append a record for commit ID, whose parents are at PARENTPOS and
+     * whose time is TIME, and then count it in the header.  Return its
+     * position.  Bench uses this directly to build synthetic histories.
+     */
+    int append(ObjectId id, int[] parentPos, long time) {
+        int generation = 0;
+        for (int p : parentPos) {
+            if (p >= 0) {
+                generation = Math.max(generation, generation(p));
+            }
+        }
+        MappedByteBuffer records = map(count + 1);
+        int at = offset(count);
+        records.put(at, id.toBytes());
+        records.putInt(at + PARENT1, parentPos[0]);
+        records.putInt(at + PARENT2, parentPos[1]);
+        records.putInt(at + GENERATION, generation + 1);
+        records.putLong(at + TIME, time);
+        records.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, count + 1);
+        if (positions != null) {
+            positions.put(id, count);
+        }
+        count += 1;
+        return count - 1;
+    }
+
+    /**
+     * Open the graph file and read its header, if that has not been
+     * done.  A missing or unreadable graph is started afresh; it holds
+     * nothing that cannot be rebuilt from the commits.
+     */
+    private void load() {
+        if (count >= 0) {
+            return;
+        }
+        try {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()
+                    && channel.read(header, header.position()) > 0) {
+                continue;
+            }
+            header.flip();
+            count = 0;
+            if (header.remaining() == HEADER_SIZE
+                    && header.getInt() == MAGIC
+                    && header.getInt() == VERSION) {
+                int n = header.getInt();
+                if (n >= 0 && channel.size() >= offset(n)) {
+                    count = n;
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit graph: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Return a mapping of the header and records.
+     */
+    private MappedByteBuffer map() {
+        return map(count);
+    }
+
+    /**
+     * Return a mapping of the header and room for at least N records,
+     * extending the file, with room to spare, if it is too short.
+     */
+    private MappedByteBuffer map(int n) {
+        load();
+        if (map == null || map.capacity() < offset(n)) {
+            try {
+                long size = channel.size();
+                if (size < offset(n)) {
+                    size = offset(2 * n + 64);
+                }
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot map commit graph: %s",
+                        excp.getMessage());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Return the offset in the graph file of the record at POS.
+     */
+    private static int offset(int pos) {
+        return HEADER_SIZE + pos * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the commit graph and its file.
+ *  @author Sasha L.
+ */
+public class CommitGraphTest {
+
+    /** Return a made-up commit id for NAME. */
+    private static ObjectId id(String name) {
+        return ObjectId.of(name.getBytes());
+    }
+
+    /** Return a graph in DIR with no commits behind it, holding
+     *  0 - 1 - 2 - 5 and 1 - 3 - 4 - 5, 5 being a merge of 2 and 4. */
+    private static CommitGraph fork(File dir) {
+        CommitGraph graph = new CommitGraph(new File(dir, "graph"), dir,
+                new ObjectStore(dir));
+        graph.append(id("0"), new int[] { -1, -1 }, 0);
+        graph.append(id("1"), new int[] { 0, -1 }, 10);
+        graph.append(id("2"), new int[] { 1, -1 }, 20);
+        graph.append(id("3"), new int[] { 1, -1 }, 30);
+        graph.append(id("4"), new int[] { 3, -1 }, 40);
+        graph.append(id("5"), new int[] { 2, 4 }, 50);
+        return graph;
+    }
+
+    /** Records read back from a reopened graph are those written. */
+    @Test
+    public void reopen() {
+        File dir = TestFiles.tempDir();
+        fork(dir).close();
+        CommitGraph graph = new CommitGraph(new File(dir, "graph"), dir,
+                new ObjectStore(dir));
+        assertEquals(6, graph.size());
+        assertEquals(id("4"), graph.id(4));
+        assertEquals(4, graph.position(id("4")));
+        assertEquals(-1, graph.position(id("6")));
+        assertEquals(2, graph.parent(5));
+        assertEquals(4, graph.secondParent(5));
+        assertEquals(-1, graph.parent(0));
+        assertEquals(1, graph.generation(0));
+        assertEquals(5, graph.generation(5));
+        assertEquals(40, graph.time(4));
+        graph.close();
+    }
+
+    /** Ancestry and merge bases follow both parents. */
+    @Test
+    public void ancestry() {
+        CommitGraph graph = fork(TestFiles.tempDir());
+        assertEquals(1, graph.mergeBase(2, 4));
+        assertEquals(4, graph.mergeBase(5, 4));
+        assertEquals(3, graph.mergeBase(3, 3));
+        assertTrue(graph.isAncestor(1, 4));
+        assertTrue(graph.isAncestor(4, 5));
+        assertTrue(graph.isAncestor(5, 5));
+        assertFalse(graph.isAncestor(2, 4));
+        assertFalse(graph.isAncestor(5, 1));
+        graph.close();
+    }
+
+    /** Commits missing from the graph are read from the commit
+     *  directory, with their ancestors, parents first. */
+    @Test
+    public void addFromCommits() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        List<Commit> line =
+            BenchSetup.commitLine(dir, store, 5, i -> "commit " + i);
+        CommitGraph graph =
+            new CommitGraph(new File(dir, "graph"), dir, store);
+        assertEquals(4, graph.add(line.get(4).getHash()));
+        assertEquals(5, graph.size());
+        for (int k = 0; k < 5; k += 1) {
+            assertEquals(ObjectId.fromHex(line.get(k).getHash()),
+                         graph.id(k));
+            assertEquals(k - 1, graph.parent(k));
+        }
+        assertEquals(2, graph.add(line.get(2).getHash()));
+        graph.close();
+    }
+
+    /** A damaged graph file, or one whose header counts more records
+     *  than it holds, is refilled from the commits as needed and gives
+     *  the same positions. */
+    @Test
+    public void damaged() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        List<Commit> line =
+            BenchSetup.commitLine(dir, store, 3, i -> "commit " + i);
+        File file = new File(dir, "graph");
+        CommitGraph graph = new CommitGraph(file, dir, store);
+        graph.add(line.get(2).getHash());
+        graph.close();
+        Runnable check = () -> {
+            CommitGraph reread = new CommitGraph(file, dir, store);
+            assertEquals(2, reread.add(line.get(2).getHash()));
+            for (int k = 0; k < 3; k += 1) {
+                assertEquals(ObjectId.fromHex(line.get(k).getHash()),
+                             reread.id(k));
+                assertEquals(k - 1, reread.parent(k));
+            }
+            reread.close();
+        };
+        TestFiles.eachDamage(file, check);
+        byte[] contents = Utils.readContents(file);
+        ByteBuffer.wrap(contents).putInt(8, 1000000);
+        Utils.writeContents(file, contents);
+        graph = new CommitGraph(file, dir, store);
+        assertEquals(0, graph.size());
+        graph.close();
+        check.run();
+    }
+}
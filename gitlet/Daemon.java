@@ -0,0 +1,237 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived server that runs Gitlet commands for the repository in
+ * its working directory, so that they do not each pay for starting a
+ * JVM, loading classes and compiling the code that runs them.  It is
+ * started by "java gitlet.Main daemon" and listens on the Unix domain
+ * socket .gitlet/daemon.sock until it is killed.  Main.main first tries
+ * to hand its arguments to a daemon through that socket, and runs the
+ * command itself if there is no socket or nothing answers on it.
+ *
+ * A request is the number of arguments followed by each argument.  The
+ * reply is the command's output as a series of chunks, each its length
+ * followed by its bytes, then a length of 0, then whether the command
+ * failed and, if so, its error message.  Connections are served by a
+ * small fixed pool of threads, but since Main keeps its state in static
+ * fields, the commands themselves run one at a time.
+ *
+ * The daemon keeps one Repository session open from command to command,
+ * so the object store's index, the mapped commit graph, the indexes
+ * and the commits already read stay in memory.  Before each command
+ * the session rereads the head, branches and stage; if any other
+ * process, such as a batch, has written the store or an index since
+ * the last command, or the last command failed, a new session is
+ * opened instead.
+ *
+ * @author Sasha L.
+ */
+class Daemon {
+    /**
+     * Path of the socket, relative to the repository.
+     */
+    static final String SOCKET = ".gitlet/daemon.sock";
+    /**
+     * Number of connections served at once.
+     */
+    private static final int THREADS = 4;
+    /**
+     * Number of accepted connections that may wait for a thread.
+     */
+    private static final int BACKLOG = 64;
+
+    /**
+     * The session kept between commands, or null if there is none.
+     */
+    private static Repository session;
+    /**
+     * The stamp of session when its last command finished.
+     */
+    private static String stamp;
+
+    /**
+     * Serve commands on SOCKET until the process is killed.
+     */
+    static void serve(File socket) {
+        if (!new File(".gitlet").isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        socket.delete();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS,
+                0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(BACKLOG),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            socket.deleteOnExit();
+            while (true) {
+                SocketChannel client = server.accept();
+                pool.execute(() -> handle(client));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot serve on %s: %s", socket.getPath(),
+                    excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Have the daemon listening on SOCKET run the command given by ARGS,
+     * copying its output to System.out, and return true; or return
+     * false, having done nothing, if no daemon is listening.  A command
+     * that fails in the daemon throws a GitletException with the same
+     * message here.
+     */
+    static boolean forward(File socket, String... args) {
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                Utils.writeString(request, arg);
+            }
+            request.flush();
+            DataInputStream reply = new DataInputStream(
+                    new BufferedInputStream(
+                            Channels.newInputStream(channel)));
+            byte[] buf = new byte[OutputBuffer.SIZE];
+            for (int len = reply.readInt(); len > 0; len = reply.readInt()) {
+                if (len > buf.length) {
+                    buf = new byte[len];
+                }
+                reply.readFully(buf, 0, len);
+                System.out.write(buf, 0, len);
+            }
+            System.out.flush();
+            if (reply.readBoolean()) {
+                throw new GitletException(Utils.readString(reply));
+            }
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Lost connection to the Gitlet daemon: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Read one request from CLIENT, run it, send back the reply, and
+     * close the connection.
+     */
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream request = new DataInputStream(
+                    new BufferedInputStream(
+                            Channels.newInputStream(client)));
+            String[] args = new String[request.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = Utils.readString(request);
+            }
+            DataOutputStream reply = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(client)));
+            String error = null;
+            synchronized (Daemon.class) {
+                Repository repo = session();
+                try {
+                    Main.run(repo, new Chunks(reply), args);
+                    stamp = repo.stamp();
+                } catch (RuntimeException excp) {
+                    error = String.valueOf(excp.getMessage());
+                    repo.release();
+                    session = null;
+                }
+            }
+            reply.writeInt(0);
+            reply.writeBoolean(error != null);
+            if (error != null) {
+                Utils.writeString(reply, error);
+            }
+            reply.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**
+     * Return the session for the next command: the one kept from the
+     * last command, refreshed, if no other process has written the
+     * repository since, or else a new one.
+     */
+    private static Repository session() {
+        if (session != null && session.stamp().equals(stamp)) {
+            session.refresh();
+        } else {
+            if (session != null) {
+                session.release();
+            }
+            session = new Repository(
+                    new File(System.getProperty("user.dir")));
+        }
+        return session;
+    }
+
+    /**
+     * A stream that sends what is written to it as length-prefixed
+     * chunks.
+     */
+    private static class Chunks extends OutputStream {
+        /**
+         * The stream the chunks go to.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * A stream sending chunks to OUT.
+         */
+        Chunks(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
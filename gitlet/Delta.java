@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/**
+ * Binary deltas between two byte sequences.  A delta is a header giving
+ * the lengths of the base and result, followed by a sequence of
+ * instructions, each of which either copies a range of the base or
+ * inserts literal bytes.
+ *
+ * @author Sasha L.
+ */
+class Delta {
+    /**
+     * Size of the blocks of the base that copies are matched against.
+     */
+    static final int BLOCK = 16;
+    /**
+     * Instruction tag for a literal insertion.
+     */
+    private static final int INSERT = 0;
+    /**
+     * Instruction tag for a copy from the base.
+     */
+    private static final int COPY = 1;
+    /**
+     * Multiplier of the rolling block hash.
+     */
+    private static final int RADIX = 31;
+
+    /**
+     * Return a delta that converts BASE into TARGET.
+     */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= RADIX;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int literal, i, h;
+        literal = i = 0;
+        h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer start = blocks.get(h);
+            if (start != null && matches(base, start, target, i)) {
+                int b = start;
+                int t = i;
+                while (b > 0 && t > literal && base[b - 1] == target[t - 1]) {
+                    b -= 1;
+                    t -= 1;
+                }
+                int end = i + BLOCK;
+                int bEnd = start + BLOCK;
+                while (end < target.length && bEnd < base.length
+                        && base[bEnd] == target[end]) {
+                    end += 1;
+                    bEnd += 1;
+                }
+                insert(out, target, literal, t);
+                out.write(COPY);
+                writeVarint(out, b);
+                writeVarint(out, end - t);
+                literal = i = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - power * target[i]) * RADIX + target[i + BLOCK];
+            }
+            i += 1;
+        }
+        insert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the result of applying the delta held in DELTA[START ..]
+     * to BASE.  A delta that is cut short or whose instructions reach
+     * outside BASE or the result is reported as corrupt.
+     */
+    static byte[] apply(byte[] base, byte[] delta, int start) {
+        int[] pos = {start};
+        try {
+            if (readVarint(delta, pos) != base.length) {
+                throw Utils.error("Delta does not match its base.");
+            }
+            byte[] result = new byte[readVarint(delta, pos)];
+            int k = 0;
+            while (pos[0] < delta.length) {
+                int op = delta[pos[0]];
+                pos[0] += 1;
+                if (op == COPY) {
+                    int from = readVarint(delta, pos);
+                    int len = readVarint(delta, pos);
+                    System.arraycopy(base, from, result, k, len);
+                    k += len;
+                } else {
+                    int len = readVarint(delta, pos);
+                    System.arraycopy(delta, pos[0], result, k, len);
+                    pos[0] += len;
+                    k += len;
+                }
+            }
+            if (k != result.length) {
+                throw Utils.error("Corrupt delta.");
+            }
+            return result;
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException
+                 excp) {
+            throw Utils.error("Corrupt delta.");
+        }
+    }
+
+    /**
+     * Write an instruction inserting TARGET[FROM .. TO-1] to OUT, if that
+     * range is not empty.
+     */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /**
+     * Return true iff the BLOCK bytes of BASE at B equal those of TARGET
+     * at T.
+     */
+    private static boolean matches(byte[] base, int b, byte[] target,
+                                   int t) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (base[b + k] != target[t + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the rolling hash of the BLOCK bytes of DATA at START.
+     */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = h * RADIX + data[k];
+        }
+        return h;
+    }
+
+    /**
+     * Write the non-negative VAL to OUT, seven bits at a time.
+     */
+    static void writeVarint(ByteArrayOutputStream out, int val) {
+        while (val >= 0x80) {
+            out.write((val & 0x7f) | 0x80);
+            val >>>= 7;
+        }
+        out.write(val);
+    }
+
+    /**
+     * Read a value written by writeVarint from DATA at POS[0], advancing
+     * POS[0] past it.
+     */
+    static int readVarint(byte[] data, int[] pos) {
+        int result, shift;
+        result = shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
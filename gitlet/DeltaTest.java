@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the delta encoding, and of objects stored as deltas.
+ *  @author Sasha L.
+ */
+public class DeltaTest {
+
+    /** A delta rebuilds its target from its base, whether the two share
+     *  everything, something or nothing. */
+    @Test
+    public void roundTrip() {
+        Random rand = new Random(61);
+        byte[] base = TestFiles.randomBytes(rand, 10000);
+        byte[] edited = base.clone();
+        System.arraycopy(TestFiles.randomBytes(rand, 100), 0,
+                         edited, 5000, 100);
+        byte[] longer = Arrays.copyOf(base, 12000);
+        for (byte[] target : new byte[][] {
+                base, edited, longer, TestFiles.randomBytes(rand, 500),
+                new byte[0] }) {
+            assertArrayEquals(target,
+                    Delta.apply(base, Delta.create(base, target), 0));
+        }
+        byte[] fromEmpty = Delta.create(new byte[0], edited);
+        assertArrayEquals(edited, Delta.apply(new byte[0], fromEmpty, 0));
+    }
+
+    /** A small edit of a large file makes a small delta. */
+    @Test
+    public void smallEditSmallDelta() {
+        byte[] base = TestFiles.randomBytes(new Random(62), 100000);
+        byte[] edited = base.clone();
+        edited[50000] ^= 1;
+        assertTrue(Delta.create(base, edited).length < 200);
+    }
+
+    /** A delta applied to a base of another length is refused. */
+    @Test(expected = GitletException.class)
+    public void wrongBase() {
+        Random rand = new Random(63);
+        byte[] base = TestFiles.randomBytes(rand, 1000);
+        byte[] delta = Delta.create(base, TestFiles.randomBytes(rand, 1000));
+        Delta.apply(Arrays.copyOf(base, 999), delta, 0);
+    }
+
+    /** A delta cut short anywhere is reported as corrupt. */
+    @Test
+    public void truncated() {
+        Random rand = new Random(64);
+        byte[] base = TestFiles.randomBytes(rand, 5000);
+        byte[] target = base.clone();
+        System.arraycopy(TestFiles.randomBytes(rand, 300), 0,
+                         target, 2000, 300);
+        byte[] delta = Delta.create(base, target);
+        for (int len = 2; len < delta.length; len += 1) {
+            try {
+                Delta.apply(base, Arrays.copyOf(delta, len), 0);
+                fail("truncated delta of " + len + " bytes accepted");
+            } catch (GitletException excp) {
+                assertEquals("Corrupt delta.", excp.getMessage());
+            }
+        }
+    }
+
+    /** A new version stored against its predecessor is kept as a short
+     *  delta and read back whole, after a reopen too. */
+    @Test
+    public void storedAsDelta() {
+        File dir = TestFiles.tempDir();
+        byte[] first = TestFiles.randomBytes(new Random(65), 8192);
+        byte[] second = first.clone();
+        second[100] ^= 1;
+        ObjectStore store = new ObjectStore(dir);
+        String a = store.put(first);
+        String b = Utils.sha1(second);
+        store.put(b, second, a);
+        store.close();
+        store = new ObjectStore(dir);
+        assertEquals(0, store.depth(a));
+        assertEquals(1, store.depth(b));
+        assertTrue(store.packedLength(b) < 100);
+        assertArrayEquals(second, store.get(b));
+        store.close();
+    }
+}
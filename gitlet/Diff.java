@@ -1,17 +1,11 @@
 package gitlet;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 
-import java.io.IOException;
-import java.nio.file.InvalidPathException;
 
 import static java.lang.Math.max;
 
@@ -27,29 +21,26 @@ public class Diff {
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _common = null;
+        _ids1 = _ids2 = null;
     }
 
-    /** Set the sequences currently being compared to the contents
-     *  of FILE1 and FILE2.  Null Files set empty lists. */
+    /** Set the sequences currently being compared to the lines of FILE1
+     *  and FILE2.  Null Files set empty lists.  The files are
+     *  memory-mapped, lines are compared as bytes, and only lines that
+     *  are asked for are decoded into Strings.  Throws a GitletException
+     *  if either file cannot be read. */
     public void setSequences(File file1, File file2) {
-        try {
-            Path p1 = file1.toPath();
-            _lines1 = Files.readAllLines(p1);
-        } catch (IOException | InvalidPathException | NullPointerException
-                 excp) {
-            _lines1 = Collections.emptyList();
-        }
-        try {
-            Path p2 = file2.toPath();
-            _lines2 = Files.readAllLines(p2);
-        } catch (IOException | InvalidPathException | NullPointerException
-                 excp) {
-            _lines2 = Collections.emptyList();
-        }
-        _lls = null;
-        _todo = null;
+        setSequences(ByteLines.map(file1), ByteLines.map(file2));
+    }
+
+    /** Set the sequences currently being compared to LINES1 and
+     *  LINES2, whose lines are compared as bytes. */
+    void setSequences(ByteLines lines1, ByteLines lines2) {
+        _lines1 = lines1;
+        _lines2 = lines2;
+        _common = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Return the first of the current sequences. */
@@ -72,80 +63,55 @@ public class Diff {
         return _lines2.get(k);
     }
 
+    /** Set the algorithm used to find common subsequences to MODE.  The
+     *  default is Mode.MYERS. */
+    public void setMode(Mode mode) {
+        _mode = mode;
+        _common = null;
+    }
+
     /** Return the length of the longest subsequence of the first K1 and K2
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
+        k1 = Math.min(k1, _lines1.size());
+        k2 = Math.min(k2, _lines2.size());
+        if (k1 == _lines1.size() && k2 == _lines2.size()
+            && _mode == Mode.MYERS) {
+            return lls();
         }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
-            return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
-        }
-        return _lls[k1][k2];
+        intern();
+        return (k1 + k2 - editDistance(k1, k2)) / 2;
     }
 
     /** Return the length of the longest common subsequence of the current
-     *  data subsequences. */
+     *  data subsequences.  In Mode.PATIENCE, this is the length of the
+     *  common subsequence found, which need not be a longest one. */
     public int lls() {
-        checkData();
-        return lls(_lines1.size(), _lines2.size());
+        int[] common = common();
+        int result;
+        result = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            result += common[k];
+        }
+        return result;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        intern();
+        return Arrays.equals(_ids1, _ids2);
+    }
+
+    /** Return largest common subsequence of the sequences being compared as
+     *  a sequence of 3n values s01, s02, L0, s11, s12, L1,..., where
+     *  si1 is the starting line position of the subsequence in the
+     *  first file (0-based), si2 is the starting position in the second
+     *  file, and Li is the length of the subsequence. */
+    public int[] commonSubsequence() {
+        return common().clone();
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -160,38 +126,6 @@ public class Diff {
         return result;
     }
 
-    /** Return largest common subsequence of the sequences being compared as
-     *  a sequence of 3n values s01, s02, L0, s11, s12, L1,..., where
-     *  si1 is the starting line position of the subsequence in the
-     *  first file (0-based), si2 is the starting position in the second
-     *  file, and Li is the length of the subsequence. */
-    public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
-            } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
-            }
-        }
-        return toIntArr(resultList);
-    }
-
     /** Return the edit that converts the first of the sequences being compared
      *  to the second. This is a sequence of 4n values d0, dL0, a0, aL0, ...,
      *  where the lines [di .. di + dL0 - 1] are the ranges of line
@@ -232,45 +166,378 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Return the common subsequence of the current sequences, in the
+     *  form returned by commonSubsequence, computing it if needed. */
+    private int[] common() {
+        checkData();
+        if (_common == null) {
+            intern();
+            int n = _ids1.length, m = _ids2.length;
+            int pre, suf;
+            pre = 0;
+            while (pre < n && pre < m && _ids1[pre] == _ids2[pre]) {
+                pre += 1;
+            }
+            suf = 0;
+            while (suf < n - pre && suf < m - pre
+                   && _ids1[n - suf - 1] == _ids2[m - suf - 1]) {
+                suf += 1;
+            }
+            _runs = new int[48];
+            _nruns = 0;
+            match(0, 0, pre);
+            if (_mode == Mode.PATIENCE) {
+                _count1 = new int[_nids];
+                _count2 = new int[_nids];
+                _where = new int[_nids];
+                patience(pre, n - suf, pre, m - suf);
+                _count1 = _count2 = _where = null;
+            } else {
+                myers(pre, n - suf, pre, m - suf);
+            }
+            match(n - suf, m - suf, suf);
+            _common = Arrays.copyOf(_runs, _nruns);
+            _runs = null;
+        }
+        return _common;
+    }
+
+    /** Give each distinct item of the current sequences an int id, the
+     *  same in both, and set _ids1 and _ids2 to the ids of their items,
+     *  if that has not been done.  The algorithms below compare only
+     *  these ids, so each item is hashed and compared in full once.  The
+     *  items are numbered consecutively across both sequences, and an
+     *  open-addressing table maps the hash of each distinct item to its
+     *  id, with the number of its first occurrence as representative. */
+    private void intern() {
+        if (_ids1 != null) {
+            return;
+        }
+        int n1 = _lines1.size(), n = n1 + _lines2.size();
+        int mask = Integer.highestOneBit(2 * n + 1) * 2 - 1;
+        int[] slots = new int[mask + 1];
+        Arrays.fill(slots, -1);
+        int[] first = new int[n], hashes = new int[n];
+        int[] ids = new int[n];
+        _nids = 0;
+        for (int g = 0; g < n; g += 1) {
+            int h = itemHash(g);
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (slots[slot] >= 0) {
+                int id = slots[slot];
+                if (hashes[id] == h && sameItem(first[id], g)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] < 0) {
+                slots[slot] = _nids;
+                first[_nids] = g;
+                hashes[_nids] = h;
+                _nids += 1;
+            }
+            ids[g] = slots[slot];
+        }
+        _ids1 = Arrays.copyOfRange(ids, 0, n1);
+        _ids2 = Arrays.copyOfRange(ids, n1, n);
+    }
+
+    /** Return a hash of item G, counting items consecutively across both
+     *  sequences. */
+    private int itemHash(int g) {
+        int n1 = _lines1.size();
+        if (_lines1 instanceof ByteLines) {
+            return g < n1 ? ((ByteLines) _lines1).hash(g)
+                : ((ByteLines) _lines2).hash(g - n1);
+        }
+        return g < n1 ? _lines1.get(g).hashCode()
+            : _lines2.get(g - n1).hashCode();
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Return true iff items G and H are equal, counting items
+     *  consecutively across both sequences. */
+    private boolean sameItem(int g, int h) {
+        int n1 = _lines1.size();
+        List<String> seqG = g < n1 ? _lines1 : _lines2,
+            seqH = h < n1 ? _lines1 : _lines2;
+        int kG = g < n1 ? g : g - n1, kH = h < n1 ? h : h - n1;
+        if (seqG instanceof ByteLines) {
+            return ((ByteLines) seqG).sameLine(kG, (ByteLines) seqH, kH);
+        }
+        return seqG.get(kG).equals(seqH.get(kH));
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Return true iff item I of the first sequence equals item J of the
+     *  second. */
+    private boolean same(int i, int j) {
+        return _ids1[i] == _ids2[j];
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Record that the L items of the first sequence starting at I match
+     *  those of the second starting at J.  Matches must be recorded in
+     *  order. */
+    private void match(int i, int j, int L) {
+        if (L == 0) {
+            return;
+        }
+        if (_nruns > 0 && _runs[_nruns - 3] + _runs[_nruns - 1] == i
+            && _runs[_nruns - 2] + _runs[_nruns - 1] == j) {
+            _runs[_nruns - 1] += L;
+            return;
+        }
+        if (_nruns + 3 > _runs.length) {
+            _runs = Arrays.copyOf(_runs, 2 * _runs.length);
+        }
+        _runs[_nruns] = i;
+        _runs[_nruns + 1] = j;
+        _runs[_nruns + 2] = L;
+        _nruns += 3;
+    }
+
+    /** Record a longest common subsequence of items [A0 .. A1-1] of the
+     *  first sequence and [B0 .. B1-1] of the second, using Myers's
+     *  O(ND) algorithm in its linear-space form: find the middle snake of
+     *  an optimal edit path and recur on the parts before and after it. */
+    private void myers(int a0, int a1, int b0, int b1) {
+        int pre, suf;
+        pre = 0;
+        while (a0 + pre < a1 && b0 + pre < b1 && same(a0 + pre, b0 + pre)) {
+            pre += 1;
+        }
+        match(a0, b0, pre);
+        a0 += pre; b0 += pre;
+        suf = 0;
+        while (a1 - suf > a0 && b1 - suf > b0
+               && same(a1 - suf - 1, b1 - suf - 1)) {
+            suf += 1;
+        }
+        a1 -= suf; b1 -= suf;
+        if (a0 < a1 && b0 < b1) {
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            myers(a0, snake[0], b0, snake[1]);
+            match(snake[0], snake[1], snake[2] - snake[0]);
+            myers(snake[2], a1, snake[3], b1);
+        }
+        match(a1, b1, suf);
+    }
+
+    /** Return the middle snake of a shortest edit script converting items
+     *  [A0 .. A1-1] of the first sequence to items [B0 .. B1-1] of the
+     *  second, as {x0, y0, x1, y1}: the snake runs diagonally from
+     *  position (x0, y0) to (x1, y1).  Both ranges must be non-empty. */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        int[] vf = new int[2 * off + 1], vb = new int[2 * off + 1];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && same(a0 + x, b0 + y)) {
+                    x += 1; y += 1;
+                }
+                vf[off + k] = x;
+                if (odd && delta - k >= -(d - 1) && delta - k <= d - 1
+                    && x + vb[off + delta - k] >= n) {
+                    return new int[] { a0 + x0, b0 + y0, a0 + x, b0 + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])) {
+                    x = vb[off + k + 1];
+                } else {
+                    x = vb[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && same(a1 - x - 1, b1 - y - 1)) {
+                    x += 1; y += 1;
+                }
+                vb[off + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                    && x + vf[off + delta - k] >= n) {
+                    return new int[] { a1 - x, b1 - y, a1 - x0, b1 - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return the length of a shortest edit script converting the first
+     *  K1 items of the first sequence to the first K2 of the second,
+     *  found by the forward pass of Myers's algorithm. */
+    private int editDistance(int k1, int k2) {
+        int max = k1 + k2;
+        int off = max + 1;
+        int[] v = new int[2 * off + 1];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1])) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < k1 && y < k2 && same(x, y)) {
+                    x += 1; y += 1;
+                }
+                v[off + k] = x;
+                if (x >= k1 && y >= k2) {
+                    return d;
+                }
+            }
+        }
+        return max;
+    }
+
+    /** Record a common subsequence of items [A0 .. A1-1] of the first
+     *  sequence and [B0 .. B1-1] of the second by patience diff: items
+     *  that occur exactly once in each range are matched along their
+     *  longest increasing subsequence, and the ranges between those
+     *  anchors are treated the same way.  Ranges with no such items fall
+     *  back to myers.  This tends to line up distinctive lines, such as
+     *  function headers, rather than braces and blank lines. */
+    private void patience(int a0, int a1, int b0, int b1) {
+        int pre, suf;
+        pre = 0;
+        while (a0 + pre < a1 && b0 + pre < b1 && same(a0 + pre, b0 + pre)) {
+            pre += 1;
+        }
+        match(a0, b0, pre);
+        a0 += pre; b0 += pre;
+        suf = 0;
+        while (a1 - suf > a0 && b1 - suf > b0
+               && same(a1 - suf - 1, b1 - suf - 1)) {
+            suf += 1;
+        }
+        a1 -= suf; b1 -= suf;
+        if (a0 < a1 && b0 < b1) {
+            int[] anchors = uniqueAnchors(a0, a1, b0, b1);
+            if (anchors.length == 0) {
+                myers(a0, a1, b0, b1);
+            } else {
+                int i, j;
+                i = a0; j = b0;
+                for (int k = 0; k < anchors.length; k += 2) {
+                    patience(i, anchors[k], j, anchors[k + 1]);
+                    match(anchors[k], anchors[k + 1], 1);
+                    i = anchors[k] + 1; j = anchors[k + 1] + 1;
+                }
+                patience(i, a1, j, b1);
+            }
+        }
+        match(a1, b1, suf);
+    }
+
+    /** Return the positions {i0, j0, i1, j1, ...} of the longest
+     *  increasing run of items that occur exactly once in each of the
+     *  ranges [A0 .. A1-1] of the first sequence and [B0 .. B1-1] of the
+     *  second, where item ik of the first matches item jk of the
+     *  second. */
+    private int[] uniqueAnchors(int a0, int a1, int b0, int b1) {
+        for (int i = a0; i < a1; i += 1) {
+            _count1[_ids1[i]] += 1;
+            _where[_ids1[i]] = i;
+        }
+        for (int j = b0; j < b1; j += 1) {
+            _count2[_ids2[j]] += 1;
+        }
+        int[] partner = new int[a1 - a0];
+        Arrays.fill(partner, -1);
+        int n;
+        n = 0;
+        for (int j = b0; j < b1; j += 1) {
+            int id = _ids2[j];
+            if (_count1[id] == 1 && _count2[id] == 1) {
+                partner[_where[id] - a0] = j;
+                n += 1;
+            }
+        }
+        for (int i = a0; i < a1; i += 1) {
+            _count1[_ids1[i]] = 0;
+        }
+        for (int j = b0; j < b1; j += 1) {
+            _count2[_ids2[j]] = 0;
+        }
+        int[] is = new int[n], js = new int[n];
+        int p;
+        p = 0;
+        for (int i = a0; i < a1; i += 1) {
+            if (partner[i - a0] >= 0) {
+                is[p] = i;
+                js[p] = partner[i - a0];
+                p += 1;
+            }
+        }
+        int[] tails = new int[n], prev = new int[n];
+        int len;
+        len = 0;
+        for (int k = 0; k < n; k += 1) {
+            int lo, hi;
+            lo = 0; hi = len;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (js[tails[mid]] < js[k]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[k] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = k;
+            len = max(len, lo + 1);
+        }
+        int[] result = new int[2 * len];
+        for (int k = len > 0 ? tails[len - 1] : -1, r = len - 1; k >= 0;
+             k = prev[k], r -= 1) {
+            result[2 * r] = is[k];
+            result[2 * r + 1] = js[k];
+        }
+        return result;
+    }
+
+    /** Algorithms for finding common subsequences. */
+    public enum Mode {
+        /** Myers's algorithm, which finds a longest common subsequence. */
+        MYERS,
+        /** Patience diff, falling back to Myers where it finds no
+         *  anchors. */
+        PATIENCE
     }
 
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** Ids of the items of _lines1 and _lines2 (see intern), or null if
+     *  not yet assigned. */
+    private int[] _ids1, _ids2;
+    /** Number of distinct ids in _ids1 and _ids2. */
+    private int _nids;
+
+    /** Work areas for uniqueAnchors, indexed by id: occurrences in each
+     *  range, and the last position in the first. */
+    private int[] _count1, _count2, _where;
+
+    /** The algorithm for finding common subsequences. */
+    private Mode _mode = Mode.MYERS;
+
+    /** The common subsequence of the current sequences, in the form
+     *  returned by commonSubsequence, or null if not yet computed. */
+    private int[] _common;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** Runs of matching items (as for _common) recorded so far while
+     *  computing _common, and the number of values in use. */
+    private int[] _runs;
+    /** Number of values of _runs in use. */
+    private int _nruns;
 
 }
@@ -0,0 +1,127 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Hashes batches of working files on a fork-join pool.  The number of
+ * worker threads is taken from the system property gitlet.threads, and
+ * defaults to the number of available processors.
+ *
+ * @author Sasha L.
+ */
+class Hasher {
+    /**
+     * Batches no larger than this are hashed on the calling thread.
+     */
+    static final int SEQUENTIAL_LIMIT = 64;
+
+    /**
+     * Return the number of worker threads to use.
+     */
+    static int threads() {
+        String prop = System.getProperty("gitlet.threads");
+        if (prop != null) {
+            try {
+                return Math.max(1, Integer.parseInt(prop));
+            } catch (NumberFormatException excp) {
+                throw Utils.error("Bad gitlet.threads: %s", prop);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Return the hashes of the contents of FILES, in the same order,
+     * using and updating INDEX, on the default number of threads.  The
+     * hash of a file that is not a plain file is null.
+     */
+    static ObjectId[] hashAll(List<File> files, StatCache index) {
+        return hashAll(files, index, threads());
+    }
+
+    /**
+     * Return the hashes of the contents of FILES, in the same order,
+     * using and updating INDEX, on THREADS threads.  The hash of a file
+     * that is not a plain file is null.
+     */
+    static ObjectId[] hashAll(List<File> files, StatCache index,
+                            int threads) {
+        ObjectId[] result = new ObjectId[files.size()];
+        if (threads <= 1 || files.size() <= SEQUENTIAL_LIMIT) {
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = hash(files.get(i), index);
+            }
+            return result;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Batch(files, index, result, 0, result.length));
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * Return the hash of FILE using INDEX, or null if it is not a plain
+     * file.
+     */
+    private static ObjectId hash(File file, StatCache index) {
+        return file.isFile() ? index.hash(file) : null;
+    }
+
+    /**
+     * The task of hashing one range of a list of files.
+     */
+    private static class Batch extends RecursiveAction {
+        /**
+         * Version of this task class; tasks are never serialized.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * The files to hash.
+         */
+        private final List<File> files;
+        /**
+         * Cache of hashes.
+         */
+        private final StatCache index;
+        /**
+         * Where to put the hash of each file.
+         */
+        private final ObjectId[] result;
+        /**
+         * Range of files, [from .. to-1], this task hashes.
+         */
+        private final int from, to;
+
+        /**
+         * A task putting the hashes of FILES[FROM .. TO-1] into the same
+         * positions of RESULT, using INDEX.
+         */
+        Batch(List<File> files, StatCache index, ObjectId[] result,
+              int from, int to) {
+            this.files = files;
+            this.index = index;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_LIMIT) {
+                for (int i = from; i < to; i += 1) {
+                    result[i] = hash(files.get(i), index);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(files, index, result, from, mid),
+                          new Batch(files, index, result, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static gitlet.Utils.UID_BYTES;
+import static gitlet.Utils.UID_LENGTH;
+
+/**
+ * A persistent sorted index of the ids of all commits, for resolving
+ * abbreviated ids.  The file holds a header (magic, version, number of
+ * sorted ids, number of unsorted ids), a fanout table whose entry B is
+ * the number of sorted ids whose first byte is at most B, the sorted
+ * ids, and then the ids of recent commits, unsorted, in the order they
+ * were made.  The sorted part is memory-mapped and searched by binary
+ * search within the range the fanout table gives, and the recent ids are
+ * scanned; once there are more than MAX_RECENT of them, the file is
+ * rewritten with all ids sorted.  The index is rebuilt from the commit
+ * directory if it is missing or corrupt.
+ *
+ * @author Sasha L.
+ */
+class IdIndex {
+    /**
+     * Magic number that starts an index file ("GCID").
+     */
+    private static final int MAGIC = 0x47434944;
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of the header: magic, version, sorted count, recent count.
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Size of the fanout table.
+     */
+    private static final int FANOUT_SIZE = 256 * 4;
+    /**
+     * Largest number of unsorted ids kept before the file is rewritten.
+     */
+    static final int MAX_RECENT = 256;
+
+    /**
+     * The index file.
+     */
+    private final File file;
+    /**
+     * Directory holding the commits, as COMMITID.txt.
+     */
+    private final File commitDir;
+    /**
+     * Mapping of the header, fanout table and sorted ids, or null if the
+     * index is not yet loaded.
+     */
+    private MappedByteBuffer sorted;
+    /**
+     * Number of sorted ids.
+     */
+    private int count;
+    /**
+     * The recent, unsorted ids.
+     */
+    private List<ObjectId> recent;
+
+    /**
+     * An index kept in FILE of the ids of the commits in COMMITDIR.
+     * Nothing is read until it is first used.
+     */
+    IdIndex(File file, File commitDir) {
+        this.file = file;
+        this.commitDir = commitDir;
+    }
+
+    /**
+     * Add ID to the index, unless it is already there.
+     */
+    void add(ObjectId id) {
+        load();
+        if (contains(id)) {
+            return;
+        }
+        if (recent.size() >= MAX_RECENT) {
+            TreeSet<ObjectId> all = all();
+            all.add(id);
+            write(all);
+            return;
+        }
+        recent.add(id);
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            long at = offset(count + recent.size() - 1);
+            writeFully(out, id.toBytes(), at);
+            out.truncate(at + UID_BYTES);
+            ByteBuffer counts = ByteBuffer.allocate(4).putInt(recent.size());
+            writeFully(out, counts.array(), 12);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit id index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the indexed ids whose hexadecimal numerals start with
+     * PREFIX, at most LIMIT of them, in order.  The result is empty if
+     * PREFIX is not a hexadecimal numeral.
+     */
+    List<ObjectId> resolve(String prefix, int limit) {
+        load();
+        ObjectId low = ObjectId.bound(prefix, false);
+        ObjectId high = ObjectId.bound(prefix, true);
+        TreeSet<ObjectId> result = new TreeSet<>();
+        if (low == null) {
+            return new ArrayList<>();
+        }
+        for (int k = lowerBound(low);
+             k < count && result.size() < limit; k += 1) {
+            ObjectId id = sortedId(k);
+            if (id.compareTo(high) > 0) {
+                break;
+            }
+            result.add(id);
+        }
+        for (ObjectId id : recent) {
+            if (id.compareTo(low) >= 0 && id.compareTo(high) <= 0) {
+                result.add(id);
+            }
+        }
+        List<ObjectId> found = new ArrayList<>(result);
+        return found.subList(0, Math.min(limit, found.size()));
+    }
+
+    /**
+     * Return true iff ID is in the index.
+     */
+    boolean contains(ObjectId id) {
+        load();
+        int k = lowerBound(id);
+        return (k < count && sortedId(k).equals(id)) || recent.contains(id);
+    }
+
+    /**
+     * Return the number of ids in the index.
+     */
+    int size() {
+        load();
+        return count + recent.size();
+    }
+
+    /**
+     * Return the position of the first sorted id that is not less than
+     * ID, or count if there is none.  Only the ids sharing ID's first
+     * byte, as found in the fanout table, are searched.
+     */
+    private int lowerBound(ObjectId id) {
+        int first = id.firstByte();
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedId(mid).compareTo(id) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return entry B of the fanout table.
+     */
+    private int fanout(int b) {
+        return sorted.getInt(HEADER_SIZE + 4 * b);
+    }
+
+    /**
+     * Return sorted id K.
+     */
+    private ObjectId sortedId(int k) {
+        byte[] raw = new byte[UID_BYTES];
+        sorted.get((int) offset(k), raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Return all ids in the index.
+     */
+    private TreeSet<ObjectId> all() {
+        TreeSet<ObjectId> result = new TreeSet<>(recent);
+        for (int k = 0; k < count; k += 1) {
+            result.add(sortedId(k));
+        }
+        return result;
+    }
+
+    /**
+     * Map the index file, if that has not been done, rebuilding it from
+     * the commits if it is missing or corrupt.
+     */
+    private void load() {
+        if (sorted == null && !read()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Map the index file and return true, or return false if it is
+     * missing or corrupt.
+     */
+    private boolean read() {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE + FANOUT_SIZE) {
+                return false;
+            }
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int n = map.getInt(8), m = map.getInt(12);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                    || n < 0 || m < 0 || size != offset(n + m)
+                    || map.getInt(HEADER_SIZE + FANOUT_SIZE - 4) != n) {
+                return false;
+            }
+            sorted = map;
+            count = n;
+            recent = new ArrayList<>();
+            byte[] raw = new byte[UID_BYTES];
+            for (int k = n; k < n + m; k += 1) {
+                map.get((int) offset(k), raw);
+                recent.add(ObjectId.fromBytes(raw, 0));
+            }
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Index every commit in commitDir.
+     */
+    private void rebuild() {
+        TreeSet<ObjectId> all = new TreeSet<>();
+        List<String> names = Utils.plainFilenamesIn(commitDir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == UID_LENGTH + 4
+                        && name.endsWith(".txt")) {
+                    try {
+                        all.add(ObjectId.fromHex(
+                            name.substring(0, UID_LENGTH)));
+                    } catch (IllegalArgumentException excp) {
+                        continue;
+                    }
+                }
+            }
+        }
+        write(all);
+    }
+
+    /**
+     * Replace the index file with one holding IDS, all sorted, and map
+     * it.  The new file is written beside the old one and renamed over
+     * it.
+     */
+    private void write(TreeSet<ObjectId> ids) {
+        int[] fanout = new int[256];
+        for (ObjectId id : ids) {
+            fanout[id.firstByte()] += 1;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            out.writeInt(0);
+            int total = 0;
+            for (int b = 0; b < 256; b += 1) {
+                total += fanout[b];
+                out.writeInt(total);
+            }
+            for (ObjectId id : ids) {
+                id.writeTo(out);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit id index: %s",
+                    excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit id index: %s",
+                    excp.getMessage());
+        }
+        if (!read()) {
+            throw Utils.error("Cannot read commit id index.");
+        }
+    }
+
+    /**
+     * Return the offset in the index file of id K, counting the sorted
+     * ids and then the recent ones.
+     */
+    private static long offset(int k) {
+        return HEADER_SIZE + FANOUT_SIZE + (long) k * UID_BYTES;
+    }
+
+    /**
+     * Write all of DATA to OUT at OFFSET.
+     */
+    private static void writeFully(FileChannel out, byte[] data,
+                                   long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long pos = offset;
+        while (buf.hasRemaining()) {
+            pos += out.write(buf, pos);
+        }
+    }
+}
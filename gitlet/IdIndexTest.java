@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the commit id index and its file.
+ *  @author Sasha L.
+ */
+public class IdIndexTest {
+
+    /** Return N made-up commit ids, each with an empty file in
+     *  COMMITDIR, as the index expects. */
+    private static List<ObjectId> ids(File commitDir, int n) {
+        List<ObjectId> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            ObjectId id = ObjectId.of(("commit " + i).getBytes());
+            Utils.writeContents(new File(commitDir, id + ".txt"), "");
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Return the ids among IDS whose numerals start with PREFIX, in
+     *  order. */
+    private static List<ObjectId> matching(List<ObjectId> ids,
+                                           String prefix) {
+        TreeSet<ObjectId> result = new TreeSet<>();
+        for (ObjectId id : ids) {
+            if (id.toHex().startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Ids added one at a time, past the point where the file is
+     *  rewritten sorted, are resolved by unique and shared prefixes, in
+     *  this index and the next. */
+    @Test
+    public void addAndResolve() {
+        File dir = TestFiles.tempDir();
+        File file = new File(dir, "ids");
+        IdIndex index = new IdIndex(file, dir);
+        assertEquals(0, index.size());
+        List<ObjectId> ids = ids(dir, IdIndex.MAX_RECENT + 50);
+        for (ObjectId id : ids) {
+            index.add(id);
+        }
+        for (IdIndex each : new IdIndex[] { index, new IdIndex(file, dir) }) {
+            assertEquals(ids.size(), each.size());
+            for (ObjectId id : ids) {
+                assertEquals(List.of(id), each.resolve(id.toHex(), 2));
+                assertTrue(each.contains(id));
+            }
+            String shared = ids.get(0).toHex().substring(0, 1);
+            assertEquals(matching(ids, shared), each.resolve(shared, 1000));
+            assertEquals(2, each.resolve(shared, 2).size());
+            assertEquals(List.of(), each.resolve("xyz", 2));
+        }
+    }
+
+    /** A damaged index file, holding recent ids as well as sorted
+     *  ones, is rebuilt from the names of the files in the commit
+     *  directory. */
+    @Test
+    public void damaged() {
+        File dir = TestFiles.tempDir();
+        File file = new File(dir, "ids");
+        IdIndex index = new IdIndex(file, dir);
+        ids(dir, 20);
+        assertEquals(20, index.size());
+        List<ObjectId> ids = ids(dir, 21);
+        index.add(ids.get(20));
+        TestFiles.eachDamage(file, () -> {
+            IdIndex reread = new IdIndex(file, dir);
+            assertEquals(ids.size(), reread.size());
+            for (ObjectId id : ids) {
+                assertEquals(List.of(id), reread.resolve(id.toHex(), 2));
+            }
+        });
+    }
+}
@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal that makes a group of small file updates, such
+ * as moving a branch and clearing the stage, happen all together or not
+ * at all.  The new contents of every file (or a mark that it is to be
+ * deleted) are first written to the journal file, followed by a
+ * checksum, and the journal is synced to disk.  Only then are the files
+ * updated, each by writing a temporary file beside it and renaming it
+ * over the old one, and the journal is deleted.  If the process dies
+ * part way through, the next command finds the journal and replays it
+ * if its checksum is good, or discards it if it was cut off, in which
+ * case none of the updates happened.  A group of one update needs no
+ * journal, since a rename is already atomic.
+ *
+ * Syncing is what makes the updates survive a crash of the machine as
+ * well as of the process.  All the files a group writes are synced
+ * together once they are all written, rather than one at a time, and
+ * the directories holding them once they are renamed.  Setting the
+ * system property gitlet.durable to false skips every sync, which keeps
+ * the updates atomic but lets a machine crash lose the latest of them.
+ *
+ * @author Sasha L.
+ */
+class Journal {
+    /**
+     * Magic number that starts a journal file ("GJNL").
+     */
+    private static final int MAGIC = 0x474a4e4c;
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The journal file.
+     */
+    private final File file;
+
+    /**
+     * A journal kept in FILE.
+     */
+    Journal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Return true unless syncing has been turned off by setting the
+     * system property gitlet.durable to false.
+     */
+    static boolean durable() {
+        return !"false".equals(System.getProperty("gitlet.durable"));
+    }
+
+    /**
+     * Force the contents of FILE, which may be a directory, to disk, if
+     * durable() is true.  Each sync counts towards disk.syncs in Stats.
+     */
+    static void sync(File file) {
+        if (!durable()) {
+            return;
+        }
+        Stats.count("disk.syncs");
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot sync %s: %s", file.getPath(),
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Rename FROM to TO atomically, replacing TO if it exists.
+     */
+    static void rename(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot rename %s: %s", from.getPath(),
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Give each file in UPDATES its new contents, or delete it if they
+     * are null, all together or not at all.
+     */
+    void apply(TreeMap<File, byte[]> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        if (updates.size() > 1) {
+            Utils.writeContents(file, encode(updates));
+            sync(file);
+            sync(file.getAbsoluteFile().getParentFile());
+        }
+        replace(updates);
+        file.delete();
+    }
+
+    /**
+     * Finish the updates in the journal file, if there is one and it is
+     * complete, and delete it.
+     */
+    void replay() {
+        if (!file.isFile()) {
+            return;
+        }
+        TreeMap<File, byte[]> updates = decode(Utils.readContents(file));
+        if (updates != null) {
+            replace(updates);
+        }
+        file.delete();
+    }
+
+    /**
+     * Give each file in UPDATES its new contents, or delete it if they
+     * are null.  The new contents are written to temporary files, which
+     * are synced together and then renamed into place.
+     */
+    private static void replace(TreeMap<File, byte[]> updates) {
+        TreeMap<File, File> temps = new TreeMap<>();
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<File, byte[]> update : updates.entrySet()) {
+            File target = update.getKey();
+            dirs.add(target.getAbsoluteFile().getParentFile());
+            if (update.getValue() == null) {
+                target.delete();
+            } else {
+                File temp = new File(target.getPath() + ".tmp");
+                Utils.writeContents(temp, update.getValue());
+                temps.put(target, temp);
+            }
+        }
+        for (File temp : temps.values()) {
+            sync(temp);
+        }
+        for (Map.Entry<File, File> temp : temps.entrySet()) {
+            rename(temp.getValue(), temp.getKey());
+        }
+        for (File dir : dirs) {
+            sync(dir);
+        }
+    }
+
+    /**
+     * Return the journal recording UPDATES: magic, version, count, each
+     * path with a flag telling whether it has contents and then its
+     * contents, and a CRC-32 checksum of all that came before.
+     */
+    private static byte[] encode(TreeMap<File, byte[]> updates) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(updates.size());
+            for (Map.Entry<File, byte[]> update : updates.entrySet()) {
+                Utils.writeString(out, update.getKey().getPath());
+                byte[] contents = update.getValue();
+                out.writeBoolean(contents != null);
+                if (contents != null) {
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding journal.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Return the updates recorded in the journal CONTENTS, or null if it
+     * is cut off or corrupt.  The checksum is checked before anything
+     * else is read.
+     */
+    private static TreeMap<File, byte[]> decode(byte[] contents) {
+        if (contents.length < 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length - 8);
+        if (ByteBuffer.wrap(contents, contents.length - 8, 8).getLong()
+                != crc.getValue()) {
+            return null;
+        }
+        TreeMap<File, byte[]> result = new TreeMap<>();
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(contents, 0,
+                            contents.length - 8));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                File target = new File(Utils.readString(in));
+                byte[] data = null;
+                if (in.readBoolean()) {
+                    data = new byte[in.readInt()];
+                    in.readFully(data);
+                }
+                result.put(target, data);
+            }
+        } catch (IOException | NegativeArraySizeException excp) {
+            return null;
+        }
+        return result;
+    }
+}
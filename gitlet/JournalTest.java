@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the journal, and of recovery from a crash part way through
+ *  a group of updates.
+ *  @author Sasha L.
+ */
+public class JournalTest {
+
+    /** Return the updates of a group that rewrites a.txt and b.txt and
+     *  deletes c.txt in DIR. */
+    private static TreeMap<File, byte[]> updates(File dir) {
+        TreeMap<File, byte[]> result = new TreeMap<>();
+        result.put(new File(dir, "a.txt"), "new a".getBytes());
+        result.put(new File(dir, "b.txt"), "new b".getBytes());
+        result.put(new File(dir, "c.txt"), null);
+        return result;
+    }
+
+    /** Give DIR the files the group from updates starts from. */
+    private static void oldFiles(File dir) {
+        Utils.writeContents(new File(dir, "a.txt"), "old a");
+        Utils.writeContents(new File(dir, "b.txt"), "old b");
+        Utils.writeContents(new File(dir, "c.txt"), "old c");
+    }
+
+    /** Check whether the files in DIR are those after the group from
+     *  updates, if DONE, or before it. */
+    private static void checkFiles(File dir, boolean done) {
+        String prefix = done ? "new " : "old ";
+        assertEquals(prefix + "a",
+                     Utils.readContentsAsString(new File(dir, "a.txt")));
+        assertEquals(prefix + "b",
+                     Utils.readContentsAsString(new File(dir, "b.txt")));
+        assertEquals(!done, new File(dir, "c.txt").exists());
+    }
+
+    /** Leave DIR as a crash would after the journal FILE of the group
+     *  from updates was synced but before any file was replaced: the
+     *  write of b.txt's temporary file is made to fail. */
+    private static void crash(File dir, File file) {
+        oldFiles(dir);
+        File blocker = new File(dir, "b.txt.tmp");
+        blocker.mkdir();
+        try {
+            new Journal(file).apply(updates(dir));
+            fail("update of b.txt did not fail");
+        } catch (IllegalArgumentException excp) {
+            blocker.delete();
+        }
+        assertTrue(file.isFile());
+        checkFiles(dir, false);
+    }
+
+    /** A group of updates is made, and leaves no journal behind. */
+    @Test
+    public void apply() {
+        File dir = TestFiles.tempDir();
+        File file = new File(dir, "journal");
+        oldFiles(dir);
+        new Journal(file).apply(updates(dir));
+        checkFiles(dir, true);
+        assertFalse(file.exists());
+        new Journal(file).replay();
+        checkFiles(dir, true);
+    }
+
+    /** A complete journal left by a crash is replayed. */
+    @Test
+    public void replay() {
+        File dir = TestFiles.tempDir();
+        File file = new File(dir, "journal");
+        crash(dir, file);
+        new Journal(file).replay();
+        checkFiles(dir, true);
+        assertFalse(file.exists());
+    }
+
+    /** A damaged journal is discarded, and none of its updates are
+     *  made. */
+    @Test
+    public void damaged() {
+        File dir = TestFiles.tempDir();
+        File file = new File(dir, "journal");
+        crash(dir, file);
+        TestFiles.eachDamage(file, () -> {
+            new Journal(file).replay();
+            checkFiles(dir, false);
+            assertFalse(file.exists());
+        });
+    }
+}
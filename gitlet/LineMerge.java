@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A three-way merge of the lines of two versions of a file, ours and
+ * theirs, against the version they both came from, the base.  Each
+ * version is diffed against the base, and the base is cut into stable
+ * runs of lines that neither side changed, separated by unstable
+ * chunks.  A chunk changed on one side only, or changed the same way on
+ * both, is taken as changed; one changed differently on both sides is a
+ * conflict, written between markers as
+ *     <<<<<<< HEAD
+ *     (our lines)
+ *     =======
+ *     (their lines)
+ *     >>>>>>>
+ * so a file of one line changed on both sides comes out as a single
+ * conflict holding both versions, as it always has.  Lines keep their
+ * own terminators, and the result is written out in one pass.
+ *
+ * @author Sasha L.
+ */
+class LineMerge {
+    /**
+     * Markers around and between the sides of a conflict.
+     */
+    private static final byte[] START = "<<<<<<< HEAD\n".getBytes(),
+        MIDDLE = "=======\n".getBytes(), END = ">>>>>>>\n".getBytes();
+
+    /**
+     * The three versions.
+     */
+    private final ByteLines base, ours, theirs;
+    /**
+     * For each line of base, the line of ours (or theirs) it matches, or
+     * -1 if it was changed on that side.
+     */
+    private int[] oursAt, theirsAt;
+    /**
+     * True iff the last line written lacked a terminator.
+     */
+    private boolean open;
+
+    /**
+     * A merge of OURS and THEIRS, both derived from BASE.  Any may be
+     * null, for a file that is absent, which merges as if empty.
+     */
+    LineMerge(byte[] base, byte[] ours, byte[] theirs) {
+        this.base = new ByteLines(base);
+        this.ours = new ByteLines(ours);
+        this.theirs = new ByteLines(theirs);
+    }
+
+    /**
+     * Write the merged lines to OUT.  Return true iff there was a
+     * conflict.
+     */
+    boolean merge(OutputStream out) throws IOException {
+        oursAt = matches(ours);
+        theirsAt = matches(theirs);
+        int n = base.size();
+        int b, o, t;
+        b = o = t = 0;
+        boolean conflict = false;
+        open = false;
+        while (b < n || o < ours.size() || t < theirs.size()) {
+            int len = 0;
+            while (b + len < n && oursAt[b + len] == o + len
+                   && theirsAt[b + len] == t + len) {
+                len += 1;
+            }
+            if (len > 0) {
+                write(ours, o, o + len, out);
+                b += len;
+                o += len;
+                t += len;
+                continue;
+            }
+            int b1 = b;
+            while (b1 < n && (oursAt[b1] < 0 || theirsAt[b1] < 0)) {
+                b1 += 1;
+            }
+            int o1 = b1 < n ? oursAt[b1] : ours.size();
+            int t1 = b1 < n ? theirsAt[b1] : theirs.size();
+            if (ours.sameLines(o, o1, base, b, b1)) {
+                write(theirs, t, t1, out);
+            } else if (theirs.sameLines(t, t1, base, b, b1)
+                       || ours.sameLines(o, o1, theirs, t, t1)) {
+                write(ours, o, o1, out);
+            } else {
+                conflict = true;
+                write(START, out);
+                write(ours, o, o1, out);
+                write(MIDDLE, out);
+                write(theirs, t, t1, out);
+                write(END, out);
+            }
+            b = b1;
+            o = o1;
+            t = t1;
+        }
+        return conflict;
+    }
+
+    /**
+     * Perform each of MERGES, writing its result over the file at the
+     * same position of FILES, on THREADS threads.  Return which merges
+     * had conflicts.
+     */
+    static boolean[] mergeAll(List<LineMerge> merges, List<File> files,
+                              int threads) {
+        boolean[] result = new boolean[merges.size()];
+        if (threads <= 1 || merges.size() <= 1) {
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = merges.get(i).mergeInto(files.get(i));
+            }
+            return result;
+        }
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < result.length; i += 1) {
+            LineMerge merge = merges.get(i);
+            File file = files.get(i);
+            tasks.add(() -> merge.mergeInto(file));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<Boolean>> done = pool.invokeAll(tasks);
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = done.get(i).get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof GitletException) {
+                throw (GitletException) cause;
+            }
+            throw Utils.error("Merge failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * Write the merged lines over FILE.  Return true iff there was a
+     * conflict.
+     */
+    boolean mergeInto(File file) {
+        try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(file))) {
+            return merge(out);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s: %s", file.getPath(),
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Return, for each line of base, the line of OTHER it matches in a
+     * longest common subsequence, or -1 if none.
+     */
+    private int[] matches(ByteLines other) {
+        Diff diff = new Diff();
+        diff.setSequences(base, other);
+        int[] common = diff.commonSubsequence();
+        int[] result = new int[base.size()];
+        Arrays.fill(result, -1);
+        for (int k = 0; k < common.length; k += 3) {
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                result[common[k] + i] = common[k + 1] + i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write lines [FROM .. TO-1] of LINES to OUT, ending the last line
+     * written first if it had no terminator.
+     */
+    private void write(ByteLines lines, int from, int to, OutputStream out)
+        throws IOException {
+        if (from < to) {
+            endLine(out);
+            lines.write(from, to, out);
+            open = !lines.terminated(to - 1);
+        }
+    }
+
+    /**
+     * Write MARKER to OUT on a line of its own.
+     */
+    private void write(byte[] marker, OutputStream out) throws IOException {
+        endLine(out);
+        out.write(marker);
+    }
+
+    /**
+     * Terminate the last line written to OUT, if it was left open.
+     */
+    private void endLine(OutputStream out) throws IOException {
+        if (open) {
+            out.write('\n');
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of three-way line merges.
+ *  @author Sasha L.
+ */
+public class LineMergeTest {
+
+    /** Return the bytes of TEXT, or null if it is null. */
+    private static byte[] bytes(String text) {
+        return text == null ? null : text.getBytes();
+    }
+
+    /** Merge OURS and THEIRS, derived from BASE, and check that the
+     *  result is EXPECTED and has a conflict iff CONFLICT. */
+    private static void check(String base, String ours, String theirs,
+                              String expected, boolean conflict)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(conflict,
+                     new LineMerge(bytes(base), bytes(ours), bytes(theirs))
+                     .merge(out));
+        assertEquals(expected, out.toString());
+    }
+
+    /** Changes to different lines are both taken. */
+    @Test
+    public void separateChanges() throws IOException {
+        check("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n",
+              "A\nb\nc\nd\nE\n", false);
+        check("a\nb\nc\nd\ne\n", "a\nb\nd\ne\n", "a\nb\nc\nd\ne\nf\n",
+              "a\nb\nd\ne\nf\n", false);
+    }
+
+    /** A change made the same way on both sides is taken once. */
+    @Test
+    public void sameChange() throws IOException {
+        check("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n", "a\nB\nc\n", false);
+    }
+
+    /** Lines changed differently on both sides are a conflict, between
+     *  markers, and the lines around it are merged. */
+    @Test
+    public void conflict() throws IOException {
+        check("a\nb\nc\nd\ne\n", "A\nb\nours\nd\ne\n",
+              "a\nb\ntheirs\nd\ne\n",
+              "A\nb\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\nd\ne\n",
+              true);
+        check("one\n", "ours\n", "theirs\n",
+              "<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n", true);
+    }
+
+    /** An absent version merges as if empty. */
+    @Test
+    public void absent() throws IOException {
+        check(null, "ours\n", null, "ours\n", false);
+        check("a\n", "a\n", null, "", false);
+        check("a\n", "b\n", null,
+              "<<<<<<< HEAD\nb\n=======\n>>>>>>>\n", true);
+    }
+
+    /** mergeInto writes the result over a file. */
+    @Test
+    public void mergeInto() {
+        File file = new File(TestFiles.tempDir(), "f.txt");
+        Utils.writeContents(file, "old contents");
+        assertFalse(new LineMerge(bytes("a\nb\nc\n"), bytes("a\nb\nC\n"),
+                                  bytes("A\nb\nc\n")).mergeInto(file));
+        assertEquals("A\nb\nC\n", Utils.readContentsAsString(file));
+    }
+}
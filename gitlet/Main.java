@@ -1,10 +1,21 @@
 package gitlet;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 
 /**
  * Driver class for Gitlet, the tiny stupid version-control system.
@@ -13,49 +24,88 @@ import java.io.File;
  */
 public class Main {
     /**
-     * The head string.
+     * The repository, as the current command sees it.
      */
-    private static String headSt;
+    private static Repository repo;
     /**
-     * Current stage.
+     * Buffered standard output for the current command.
      */
-    private static Staging stage;
+    private static PrintStream out;
     /**
-     * Current working directory.
+     * Commands that batch runs without a checkpoint after them, since
+     * they change nothing on disk but the stage and the working files.
      */
-    private static File cwd;
+    private static final List<String> DEFERRABLE = List.of("add", "rm",
+            "status", "log", "global-log", "find");
     /**
-     * Commit directory.
+     * Commands that take exactly one operand.
      */
-    private static String commitDir;
+    private static final List<String> ONE_OPERAND = List.of("add", "rm",
+            "branch", "rm-branch", "reset", "merge");
+
     /**
-     * Blob Directory.
+     * Usage: java gitlet.Main ARGS, where ARGS contains
+     * <COMMAND> <OPERAND> ....  The command is handed to the daemon
+     * serving this repository if there is one, and run here otherwise.
+     * "java gitlet.Main daemon" starts a daemon.
      */
-    private static String blobDir;
+    public static void main(String... args) {
+        if (args.length == 1 && args[0].equals("daemon")) {
+            Daemon.serve(new File(Daemon.SOCKET));
+        } else if (args.length > 0 && args[0].equals("batch")
+                   || !new File(Daemon.SOCKET).exists()
+                   || !Daemon.forward(new File(Daemon.SOCKET), args)) {
+            run(System.out, args);
+        }
+    }
+
     /**
-     * Staging Directory.
+     * Run the command given by ARGS in this process, printing its output
+     * on STDOUT.  The files the command opened are released even if it
+     * fails.
      */
-    private static String stageDir;
+    static void run(OutputStream stdout, String... args) {
+        Repository session =
+            new Repository(new File(System.getProperty("user.dir")));
+        try {
+            run(session, stdout, args);
+        } finally {
+            session.release();
+        }
+    }
+
     /**
-     * Branch Directory.
+     * Run the command given by ARGS in this process on the repository
+     * session SESSION, printing its output on STDOUT, and save SESSION
+     * if the command succeeds.
      */
-    private static String branchDir;
+    static void run(Repository session, OutputStream stdout,
+                    String... args) {
+        Stats.clear();
+        repo = session;
+        out = new PrintStream(
+                new OutputBuffer(stdout, OutputBuffer.pageLines()));
+        try {
+            if (args.length == 0) {
+                out.println("Please enter a command.");
+                return;
+            }
+            dispatch(args);
+            repo.save();
+        } finally {
+            out.flush();
+        }
+        Stats.report();
+    }
 
     /**
-     * Usage: java gitlet.Main ARGS, where ARGS contains
-     * <COMMAND> <OPERAND> ....
+     * Run the command given by ARGS.
      */
-    public static void main(String... args) {
-        cwd = new File(System.getProperty("user.dir"));
-        commitDir = ".gitlet/commits/";
-        blobDir = ".gitlet/commits/blobs/";
-        stageDir = ".gitlet/staging/";
-        branchDir = ".gitlet/branches/";
-        if (args.length == 0) {
-            System.out.println("Please enter a command.");
+    private static void dispatch(String... args) {
+        if (ONE_OPERAND.contains(args[0]) && args.length < 2) {
+            out.println("Incorrect operands.");
             return;
         }
-
         switch (args[0]) {
         case "init":
             init();
@@ -76,13 +126,13 @@ public class Main {
             rm(args[1]);
             break;
         case "find":
-            find(args[1]);
+            find(args);
             break;
         case "status":
             status();
             break;
         case "global-log":
-            globalLog();
+            globalLog(args);
             break;
         case "branch":
             branch(args[1]);
@@ -96,160 +146,246 @@ public class Main {
         case "merge":
             merge(args[1]);
             break;
+        case "batch":
+            batch(args);
+            break;
+        case "repack":
+            repack();
+            break;
         default:
-            System.out.println("No command with that name exists.");
+            out.println("No command with that name exists.");
 
         }
     }
 
+    /**
+     * Run the commands in the file named by ARGS[1], or on the standard
+     * input if ARGS has no file, one to a line, with operands separated
+     * by blanks and quoted with " or ' where they hold blanks.  Blank
+     * lines and lines starting with # are skipped.  The repository
+     * session stays open from one command to the next, and is saved only
+     * at checkpoints: after each command that changes more than the
+     * stage and the working files, at each line reading "checkpoint",
+     * and at the end of the input.  A command that fails prints its
+     * error and the batch goes on with the next line.  A crash loses the
+     * staging done since the last checkpoint, just as a crash part way
+     * through a run of single commands would lose their stage writes.
+     */
+    private static void batch(String... args) {
+        if (args.length > 2) {
+            out.println("Incorrect operands.");
+            return;
+        }
+        BufferedReader in;
+        try {
+            in = new BufferedReader(args.length == 1
+                    ? new InputStreamReader(System.in)
+                    : new FileReader(args[1]));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", args[1],
+                    excp.getMessage());
+        }
+        try (in) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                List<String> words = words(line);
+                if (words.isEmpty() || words.get(0).startsWith("#")) {
+                    continue;
+                } else if (words.get(0).equals("checkpoint")) {
+                    repo.save();
+                } else if (words.get(0).equals("batch")) {
+                    out.println("Incorrect operands.");
+                } else {
+                    try {
+                        dispatch(words.toArray(new String[0]));
+                    } catch (GitletException excp) {
+                        out.println(excp.getMessage());
+                        continue;
+                    }
+                    if (!DEFERRABLE.contains(words.get(0))) {
+                        repo.save();
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commands: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the words of LINE, as batch splits it.
+     */
+    private static List<String> words(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"'
+                           && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+
     public static void init() {
-        File gitSource = new File(".gitlet");
-        if (gitSource.exists()) {
-            System.out.println("A Gitlet version-control system already "
+        if (Repository.exists()) {
+            out.println("A Gitlet version-control system already "
                     + "exists in the current directory.");
             return;
         }
-        gitSource.mkdir();
-        new File(commitDir).mkdir();
-        new File(blobDir).mkdir();
-        new File(branchDir).mkdir();
-        new File(stageDir).mkdir();
+        Repository.create();
 
         Commit initialCommit =
-                new Commit(
-                        "initial commit", new TreeMap<String, String>(), null);
-        File commitPath = new
-                File(commitDir + initialCommit.getHash() + ".txt");
-        Utils.writeObject(commitPath, initialCommit);
-
-        File master = new File(branchDir + "master.txt");
-        Utils.writeContents(master, initialCommit.getHash());
-
-        File head = new File(branchDir + "head.txt");
-        Utils.writeContents(head, "master");
-
-        File staging = new File(stageDir + "stage.txt");
-        stage = new Staging();
-        Utils.writeObject(staging, stage);
-    }
-
-    public static Staging getStage() {
-        return Utils.readObject
-                (new File(stageDir + "stage.txt"), Staging.class);
+                new Commit("initial commit",
+                        Tree.update(repo.getObjects(), null,
+                                new TreeMap<String, String>()),
+                        null, repo.getObjects());
+        repo.addCommit(initialCommit);
+        repo.setBranch("master", initialCommit.getHash());
+        repo.setHeadBranch("master");
+        repo.newStage();
     }
 
     public static void add(String fileName) {
         File curFile = new File(fileName);
-        stage = getStage();
+        Staging stage = repo.getStage();
         if (curFile.exists()) {
-            byte[] curContent = Utils.readContents(curFile);
-            String curHash = Utils.sha1(curContent);
-            if (getCurCommit().getBlobs().get(fileName) != null
-                    && getCurCommit()
-                    .getBlobs().get(fileName).equals(curHash)) {
+            ObjectStore objects = repo.getObjects();
+            StatCache index = repo.getIndex();
+            String prevHash = getCurCommit().getBlob(fileName);
+            ObjectId curId = index.lookup(curFile);
+            if (curId == null
+                    || !curId.equalsHex(prevHash)
+                    && !objects.contains(curId)) {
+                curId = objects.putFile(curFile, prevHash == null
+                        ? null : ObjectId.fromHex(prevHash));
+                index.record(curFile, curId);
+            }
+            if (curId.equalsHex(prevHash)) {
                 if (stage.getRemove().contains(fileName)) {
                     stage.getRemove().remove(fileName);
-                    Utils.writeObject(new File(stageDir + "stage.txt"), stage);
+                    repo.stageChanged();
 
                 }
                 return;
             }
-            Utils.writeContents(
-                    new File(blobDir + curHash + ".txt"), curContent);
-
             if (stage.getRemove().contains(fileName)) {
                 stage.getRemove().remove(fileName);
             } else {
-                stage.add(fileName, curHash);
+                stage.add(fileName, curId.toHex());
             }
 
-            Utils.writeObject(new File(stageDir + "stage.txt"), stage);
+            repo.stageChanged();
         } else {
-            System.out.println("File does not exist.");
+            out.println("File does not exist.");
         }
 
     }
 
 
     public static Commit getCurCommit() {
-        headSt = Utils.readContentsAsString(new File(branchDir + "head.txt"));
-        String curHash = Utils.readContentsAsString
-                (new File(branchDir + headSt + ".txt"));
-        return Utils.readObject
-                (new File(commitDir + curHash + ".txt"), Commit.class);
+        return repo.getHeadCommit();
     }
 
     public static void commitFiles(String[] args) {
-        stage = getStage();
+        Staging stage = repo.getStage();
         if (stage.getAdd().isEmpty() && stage.getRemove().isEmpty()) {
-            System.out.println("No changes added to the commit.");
+            out.println("No changes added to the commit.");
             return;
         }
         if (args[1].isEmpty()) {
-            System.out.println("Please enter a commit message.");
+            out.println("Please enter a commit message.");
             return;
         }
 
-        Commit curCommit = getCurCommit();
-        TreeMap<String, String> toCommit = curCommit.getBlobs();
-        for (Map.Entry<String, String> toAdd : stage.getAdd().entrySet()) {
-            toCommit.put(toAdd.getKey(), toAdd.getValue());
-        }
+        TreeMap<String, String> changes = new TreeMap<>(stage.getAdd());
         for (String toRemove : stage.getRemove()) {
-            toCommit.remove(toRemove);
+            changes.put(toRemove, null);
         }
         stage.getAdd().clear();
         stage.getRemove().clear();
-        Utils.writeObject(new File(stageDir + "stage.txt"), stage);
-
-
-        Commit newCommit = new Commit(args[1], toCommit, curCommit.getHash());
-        Utils.writeObject(
-                new File(commitDir + newCommit.getHash() + ".txt"), newCommit);
-        String curBranch = getHeadBr();
-        Utils.writeContents(
-                new File(branchDir + curBranch + ".txt"), newCommit.getHash());
-
+        repo.stageChanged();
+        makeCommit(args[1], changes, null);
+    }
 
+    /**
+     * Make a commit with message MESSAGE on the current branch, whose
+     * files are those of the current commit with CHANGES applied (each a
+     * new blob hash, or null for a removal), and whose second parent is
+     * SECONDPARENT, or null if it is not a merge.
+     */
+    public static void makeCommit(String message,
+                                  TreeMap<String, String> changes,
+                                  String secondParent) {
+        Commit curCommit = getCurCommit();
+        String tree = Tree.update(repo.getObjects(), curCommit.getTree(),
+                changes);
+        Commit newCommit = new Commit(message, tree, curCommit.getHash(),
+                secondParent, repo.getObjects());
+        repo.addCommit(newCommit);
+        repo.setBranch(getHeadBr(), newCommit.getHash());
     }
 
     public static void rm(String fileName) {
-        stage = getStage();
+        Staging stage = repo.getStage();
         Commit curCommit = getCurCommit();
         boolean error = true;
         if (stage.getAdd().containsKey(fileName)) {
             stage.getAdd().remove(fileName);
             error = false;
         }
-        if (curCommit.getBlobs().containsKey(fileName)) {
+        if (curCommit.getBlob(fileName) != null) {
             stage.addRemove(fileName);
             Utils.restrictedDelete(new File(fileName));
             error = false;
         }
 
-        Utils.writeObject(new File(stageDir + "stage.txt"),
-                stage);
+        repo.stageChanged();
         if (error) {
-            System.out.println("No reason to remove the file.");
+            out.println("No reason to remove the file.");
         }
 
     }
 
     public static void log() {
-        Commit checkCommit = getCurCommit();
-        while (checkCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + checkCommit.getHash());
-            System.out.println("Date: " + checkCommit.getDate());
-            System.out.println(checkCommit.getLog());
-            if (checkCommit.getParent() != null) {
-                System.out.println();
-                File parentFile =
-                        new File(commitDir + checkCommit.getParent()
-                                + ".txt");
-                checkCommit = Utils.readObject(parentFile, Commit.class);
-            } else {
-                break;
+        CommitGraph graph = repo.getGraph();
+        int pos = graph.add(getHeadCommit());
+        while (pos >= 0) {
+            Commit checkCommit = repo.getCommit(graph.id(pos).toHex());
+            out.println("===");
+            out.println("commit " + checkCommit.getHash());
+            printMerge(checkCommit);
+            out.println("Date: " + checkCommit.getDate());
+            out.println(checkCommit.getLog());
+            pos = graph.parent(pos);
+            if (pos >= 0) {
+                out.println();
             }
         }
 
@@ -257,15 +393,25 @@ public class Main {
     }
 
 
+    /**
+     * Print the abbreviated parents of COMMIT if it is a merge.
+     */
+    public static void printMerge(Commit commit) {
+        if (commit.getSecondParent() != null) {
+            out.println("Merge: " + commit.getParent().substring(0, 7)
+                    + " " + commit.getSecondParent().substring(0, 7));
+        }
+    }
+
     public static void checkout(String... args) {
         if (args.length == 3) {
             if (!args[1].equals("--")) {
-                System.out.println("Incorrect operands.");
+                out.println("Incorrect operands.");
             }
             checkoutFile(args[2]);
         } else if (args.length == 4) {
             if (!args[2].equals("--")) {
-                System.out.println("Incorrect operands.");
+                out.println("Incorrect operands.");
             }
             checkoutCommit(args[1], args[3]);
         } else if (args.length == 2) {
@@ -274,226 +420,257 @@ public class Main {
     }
 
     public static void checkoutBranch(String branchName) {
-        if (!(new File(branchDir + branchName + ".txt").exists())) {
-            System.out.println("No such branch exists.");
+        if (!repo.hasBranch(branchName)) {
+            out.println("No such branch exists.");
             return;
         }
 
         Commit curCommit = getCurCommit();
-        String brCommitHash = Utils.readContentsAsString
-                (new File(branchDir + branchName + ".txt"));
-
-        Commit brCommit = Utils.readObject
-                (new File(commitDir + brCommitHash + ".txt"),
-                        Commit.class);
+        Commit brCommit = repo.getCommit(repo.getBranch(branchName));
 
         if (getHeadBr().equals(branchName)) {
-            System.out.println("No need to checkout the current branch.");
+            out.println("No need to checkout the current branch.");
+            return;
+        }
+        if (!switchFiles(curCommit, brCommit)) {
             return;
         }
-        TreeMap<String, String> brBlobs = brCommit.getBlobs();
 
-        TreeMap<String, String> curBlobs = curCommit.getBlobs();
+        Staging stage = repo.getStage();
+        stage.clear();
+        repo.stageChanged();
+        repo.setHeadBranch(branchName);
 
-        List<String> cwdFiles = Utils.plainFilenamesIn(cwd);
+    }
 
-        for (int i = 0; i < cwdFiles.size(); i++) {
-            if (!curCommit.getBlobs().containsKey
-                    (cwdFiles.get(i)) && brCommit.getBlobs().
-                    containsKey(cwdFiles.get(i))) {
-                System.out.println(
+    /**
+     * Replace the files of commit CURR in the working directory with
+     * those of commit TO, unless an untracked file is in the way, in
+     * which case say so and return false.  Only files whose blobs differ
+     * between the two commits are certain to be written or deleted;
+     * each other file of TO is rewritten only if the stat cache cannot
+     * vouch that the working copy still holds its blob, so unchanged
+     * files are neither read nor written.  The rest are written by a
+     * Materializer.
+     */
+    private static boolean switchFiles(Commit curr, Commit to) {
+        ObjectStore objects = repo.getObjects();
+        StatCache index = repo.getIndex();
+        TreeMap<String, String> changes = new TreeMap<>();
+        TreeMap<String, String> old = new TreeMap<>();
+        Tree.diff(objects, curr.getTree(), to.getTree(), "", changes, old);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() != null
+                    && !old.containsKey(change.getKey())
+                    && new File(change.getKey()).exists()) {
+                out.println(
                         "There is an untracked file in the way; "
                                 + "delete it, or add and commit it first.");
-                return;
+                return false;
             }
-
         }
-
-        for (Map.Entry<String, String> curBlob : curBlobs.entrySet()) {
-            if (!brBlobs.containsKey(curBlob.getKey())) {
-                Utils.restrictedDelete(
-                        new File(cwd.getPath() + "/" + curBlob.getKey()));
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                Utils.restrictedDelete(change.getKey());
             }
         }
-
-        for (Map.Entry<String, String> brBlob : brBlobs.entrySet()) {
-            File filePath = new File(
-                    cwd.getPath() + "/"
-                            + blobDir + (brBlob.getValue()) + ".txt");
-            byte[] fileContent = Utils.readContents(filePath);
-            File newFile = new File(cwd.getPath() + "/" + brBlob.getKey());
-            Utils.writeContents(newFile, fileContent);
+        List<File> files = new ArrayList<>();
+        List<ObjectId> ids = new ArrayList<>();
+        for (Map.Entry<String, String> blob : to.getBlobs().entrySet()) {
+            File file = new File(blob.getKey());
+            ObjectId id = ObjectId.fromHex(blob.getValue());
+            if (!changes.containsKey(blob.getKey())) {
+                ObjectId cached = index.lookup(file);
+                if (id.equals(cached)) {
+                    continue;
+                }
+            }
+            files.add(file);
+            ids.add(id);
         }
-
-
-        stage = getStage();
-        stage.clear();
-        Utils.writeObject(new File(stageDir + "stage.txt"), stage);
-        Utils.writeContents(new File(branchDir + "head.txt"), branchName);
-
+        new Materializer(objects, index, Hasher.threads()).write(files, ids);
+        return true;
     }
 
     public static void checkoutFile(String filename) {
-        Commit curCommit = getCurCommit();
-        if (!curCommit.getBlobs().containsKey(filename)) {
-            System.out.println("File does not exist in that commit.");
+        String blob = getCurCommit().getBlob(filename);
+        if (blob == null) {
+            out.println("File does not exist in that commit.");
             return;
         }
 
+        File cwd = repo.getCwd();
         if (new File(cwd.getPath() + "/" + filename).exists()) {
             Utils.restrictedDelete(filename);
         }
-        File filePath = new File(
-                cwd.getPath() + "/" + blobDir
-                        + curCommit.getBlobs().get(filename) + ".txt");
-
-        byte[] fileContent = Utils.readContents(filePath);
+        byte[] fileContent = repo.getObjects().get(blob);
         File newFile = new File(cwd.getPath(), filename);
         Utils.writeContents(newFile, fileContent);
 
 
     }
 
-    public static String getShortID(String shortID) {
-        for (String commit : Utils.plainFilenamesIn(commitDir)) {
-            if (commit.startsWith(shortID)) {
-                return commit;
-
-            }
+    /**
+     * Return the full id of the commit whose id is or starts with ID, or
+     * null, having said why, if there is no such commit or more than
+     * one.
+     */
+    public static String resolveCommit(String id) {
+        if (id.length() == Utils.UID_LENGTH && repo.hasCommit(id)) {
+            return id;
+        }
+        List<ObjectId> found = repo.getCommitIds().resolve(id, 2);
+        if (found.isEmpty()) {
+            out.println("No commit with that id exists.");
+            return null;
+        } else if (found.size() > 1) {
+            out.println("More than one commit has that id prefix.");
+            return null;
         }
-        return null;
+        return found.get(0).toHex();
     }
 
     public static void checkoutCommit(String commitHash, String fileName) {
-        if (commitHash.length() < Utils.UID_LENGTH) {
-            String id = getShortID(commitHash);
-            commitHash = id.substring(0, id.length() - 4);
-        }
-        File commitPath = new File(commitDir + commitHash + ".txt");
-        if (!commitPath.exists()) {
-            System.out.println("No commit with that id exists.");
+        commitHash = resolveCommit(commitHash);
+        if (commitHash == null) {
             return;
         }
-        Commit curCommit = Utils.readObject(commitPath, Commit.class);
+        String blob = repo.getCommit(commitHash).getBlob(fileName);
 
-        File filePath = new File(
-                cwd.getPath() + "/"
-                        + blobDir + curCommit.getBlobs().get(fileName)
-                        + ".txt");
-
-
-        if (!curCommit.getBlobs().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
+        if (blob == null) {
+            out.println("File does not exist in that commit.");
             return;
         }
+        File cwd = repo.getCwd();
         if (new File(cwd.getPath() + fileName).exists()) {
             Utils.restrictedDelete(fileName);
         }
 
-        byte[] fileContent = Utils.readContents(filePath);
+        byte[] fileContent = repo.getObjects().get(blob);
 
         File newFile = new File(cwd.getPath(), fileName);
         Utils.writeContents(newFile, fileContent);
 
     }
 
-    public static void globalLog() {
-        List<String> allCommits = new ArrayList<String>();
-        allCommits = Utils.plainFilenamesIn(commitDir);
-
-        for (int i = 0; i < allCommits.size(); i++) {
-            File curCommitFile = new File(commitDir + allCommits.get(i));
-            Commit curCommit = Utils.readObject(curCommitFile, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + curCommit.getHash());
-            System.out.println("Date: " + curCommit.getDate());
-            System.out.println(curCommit.getLog());
-            System.out.println();
+    /**
+     * Print every commit, newest first, from the commit catalog.  ARGS
+     * may add "--limit N" to print only the N newest commits, and
+     * "--since DATE" (as yyyy-MM-dd) to stop at the first commit made
+     * before DATE.  Commits are read one at a time, so the time and
+     * memory taken follow the number of commits printed.
+     */
+    public static void globalLog(String... args) {
+        long limit = Long.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException();
+                } else if (args[i].equals("--limit")) {
+                    limit = Long.parseLong(args[i + 1]);
+                } else if (args[i].equals("--since")) {
+                    since = new SimpleDateFormat("yyyy-MM-dd")
+                        .parse(args[i + 1]).getTime() / 1000;
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException | ParseException excp) {
+            out.println("Incorrect operands.");
+            return;
+        }
+        Iterator<CommitCatalog.Entry> entries = repo.getCatalog().newestFirst();
+        for (long n = 0; n < limit && entries.hasNext(); n += 1) {
+            CommitCatalog.Entry entry = entries.next();
+            if (entry.getTime() < since) {
+                break;
+            }
+            out.println("===");
+            out.println("commit " + entry.getId().toHex());
+            if (entry.getSecondParent() != null) {
+                out.println("Merge: "
+                        + entry.getParent().toHex().substring(0, 7) + " "
+                        + entry.getSecondParent().toHex().substring(0, 7));
+            }
+            out.println("Date: " + entry.getDate());
+            out.println(entry.getMessage());
+            out.println();
         }
-
-
     }
 
-    public static void find(String logMessage) {
-
-        List<String> allCommits = Utils.plainFilenamesIn(commitDir);
-        ArrayList<String> logCommits = new ArrayList<String>();
-
-        for (int i = 0; i < allCommits.size(); i++) {
-            File fileName = new File(commitDir + allCommits.get(i));
-            String commitMessage = Utils.readObject
-                    (fileName, Commit.class).getLog();
-            if (commitMessage.equals(logMessage)) {
-                logCommits.add(fileName.getName());
-            }
+    /**
+     * Print the ids of the commits whose messages match, as given by
+     * ARGS: "find MESSAGE" for an exact match, "find --prefix TEXT" for
+     * messages starting with TEXT, and "find --substring TEXT" for
+     * messages containing it.
+     */
+    public static void find(String... args) {
+        List<String> found;
+        if (args.length == 3 && args[1].equals("--prefix")) {
+            found = repo.getMessages().prefix(args[2]);
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            found = repo.getMessages().substring(args[2]);
+        } else if (args.length == 2) {
+            found = repo.getMessages().exact(args[1]);
+        } else {
+            out.println("Incorrect operands.");
+            return;
         }
-        if (logCommits.isEmpty()) {
-            System.out.println("Found no commit with that message.");
+        if (found.isEmpty()) {
+            out.println("Found no commit with that message.");
             return;
         }
-        for (String commits : logCommits) {
-            System.out.println(commits.substring(0, commits.length() - 4));
+        for (String hash : found) {
+            out.println(hash);
         }
-
-
     }
 
     public static void status() {
-        if (!(new File(".gitlet").exists())) {
-            System.out.println(
+        if (!Repository.exists()) {
+            out.println(
                     "Not in an initialized Gitlet directory.");
             return;
         }
-        System.out.println("=== Branches ===");
-
-        List<String> branches = new ArrayList<String>();
-        File[] allFiles = new File(".gitlet/branches").listFiles();
-        for (File file : allFiles) {
-            branches.add(file.getName().substring
-                    (0, file.getName().length() - 4));
-        }
+        out.println("=== Branches ===");
 
-        String curHead = Utils.readContentsAsString
-                (new File(branchDir + "head.txt"));
-        System.out.println("*" + curHead);
+        String curHead = getHeadBr();
+        out.println("*" + curHead);
 
-        branches.remove("head");
-        branches.remove(curHead);
-
-        for (int i = 0; i < branches.size(); i++) {
-            System.out.println(branches.get(i));
+        for (String branch : repo.getBranchNames()) {
+            if (!branch.equals(curHead)) {
+                out.println(branch);
+            }
         }
-        System.out.println();
-        System.out.println("=== Staged Files ===");
+        out.println();
+        out.println("=== Staged Files ===");
 
-        stage = getStage();
+        Staging stage = repo.getStage();
         for (Map.Entry<String, String> toAdd : stage.getAdd().entrySet()) {
-            System.out.println(toAdd.getKey());
+            out.println(toAdd.getKey());
         }
-        System.out.println();
-        System.out.println("=== Removed Files ===");
+        out.println();
+        out.println("=== Removed Files ===");
 
-        stage = getStage();
         for (String toRemove : stage.getRemove()) {
-            System.out.println(toRemove);
+            out.println(toRemove);
         }
 
-        System.out.println();
-        System.out.println("=== Modifications Not Staged For Commit ===");
+        out.println();
+        out.println("=== Modifications Not Staged For Commit ===");
 
         checkModCommit();
 
-        System.out.println();
-        System.out.println("=== Untracked Files ===");
-        stage = getStage();
+        out.println();
+        out.println("=== Untracked Files ===");
         Commit curCommit = getCurCommit();
         TreeMap<String, String> stageAdd = stage.getAdd();
 
-        List<String> cwdFiles = Utils.plainFilenamesIn(cwd.getPath());
+        List<String> cwdFiles = Utils.plainFilenamesIn(repo.getCwd());
         for (String monkey : cwdFiles) {
             if (!stageAdd.containsKey(monkey)
                     && !curCommit.getBlobs().containsKey(monkey)) {
-                System.out.println(monkey);
+                out.println(monkey);
             }
         }
 
@@ -501,142 +678,134 @@ public class Main {
 
     public static void checkModCommit() {
         Commit curCommit = getCurCommit();
-        TreeMap<String, String> curBlobs = curCommit.getBlobs();
-        stage = getStage();
-
-        for (Map.Entry<String, String> blob : curBlobs.entrySet()) {
-            File cwdFile = new File(blob.getKey());
-            if (cwdFile.exists()) {
-                byte[] curContent = Utils.readContents(cwdFile);
-                String curHash = Utils.sha1(curContent);
-                if (!blob.getValue().equals(curHash)) {
-                    System.out.println(blob.getKey() + " (modified)");
-                }
-            } else if (!stage.getRemove().contains(blob.getKey())) {
-                System.out.println(blob.getKey() + " (deleted)");
-            }
-        }
-
-        TreeMap<String, String> stageAdd = stage.getAdd();
-        for (Map.Entry<String, String> toAdd : stageAdd.entrySet()) {
-            File cwdFile = new File(toAdd.getKey());
-            byte[] curContent = Utils.readContents(cwdFile);
-            String curHash = Utils.sha1(curContent);
-            if (cwdFile.exists()) {
-                if (!toAdd.getValue().equals(curHash)) {
-                    System.out.println(toAdd.getKey() + " (modified)");
+        Staging stage = repo.getStage();
+
+        List<Map.Entry<String, String>> tracked =
+                new ArrayList<>(curCommit.getBlobs().entrySet());
+        tracked.addAll(stage.getAdd().entrySet());
+        List<File> cwdFiles = new ArrayList<>();
+        for (Map.Entry<String, String> blob : tracked) {
+            cwdFiles.add(new File(blob.getKey()));
+        }
+        ObjectId[] curHashes = Hasher.hashAll(cwdFiles, repo.getIndex());
+
+        for (int i = 0; i < tracked.size(); i++) {
+            String fileName = tracked.get(i).getKey();
+            if (curHashes[i] != null) {
+                if (!curHashes[i].equalsHex(tracked.get(i).getValue())) {
+                    out.println(fileName + " (modified)");
                 }
-            } else if (!stage.getRemove().contains(toAdd.getKey())) {
-                System.out.println(toAdd.getKey() + " (deleted)");
+            } else if (!stage.getRemove().contains(fileName)) {
+                out.println(fileName + " (deleted)");
             }
         }
 
     }
 
     public static String getHeadBr() {
-        return Utils.readContentsAsString(new File(branchDir + "head.txt"));
+        return repo.getHeadBranch();
 
     }
 
     public static String getHeadCommit() {
-        return Utils.readContentsAsString
-                (new File(branchDir + getHeadBr() + ".txt"));
+        return repo.getHeadCommitId();
     }
 
     public static void branch(String branchName) {
-        File newBranch = new File(branchDir + branchName + ".txt");
-        if (newBranch.exists()) {
-            System.out.println("A branch with that name already exists.");
+        if (repo.hasBranch(branchName)) {
+            out.println("A branch with that name already exists.");
             return;
         }
         String curCommit = getHeadCommit();
 
-        Utils.writeContents(newBranch, curCommit);
+        repo.setBranch(branchName, curCommit);
 
 
     }
 
     public static void rmBranch(String branchName) {
-        if (branchName.equals(Utils.readContentsAsString
-                (new File(branchDir + "head.txt")))) {
-            System.out.print("Cannot remove the current branch.");
+        if (branchName.equals(getHeadBr())) {
+            out.print("Cannot remove the current branch.");
             return;
         }
-        File branchFile = new File(branchDir + branchName + ".txt");
-        if (!branchFile.delete()) {
-            System.out.print("A branch with that name does not exist.");
+        if (!repo.removeBranch(branchName)) {
+            out.print("A branch with that name does not exist.");
         }
     }
 
 
     public static void reset(String commitName) {
-        if (commitName.length() < Utils.UID_LENGTH) {
-            commitName = getShortID(commitName);
-        }
-        if (!new File(commitDir + commitName + ".txt").exists()) {
-            System.out.println("No commit with that id exists.");
+        commitName = resolveCommit(commitName);
+        if (commitName == null) {
             return;
         }
 
-        Commit toCommit = Utils.readObject
-                (new File(commitDir + commitName + ".txt"), Commit.class);
-        Commit curCommit = getCurCommit();
-        List<String> cwdFiles = Utils.plainFilenamesIn(cwd.getPath());
-
-        for (String file : cwdFiles) {
-            if (!curCommit.getBlobs().
-                    containsKey(file)
-                    && toCommit.getBlobs().containsKey(file)) {
-                System.out.println(
-                        "There is an untracked file in the way; "
-                                + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        for (String file : cwdFiles) {
-            if (curCommit.getBlobs().containsKey(file)
-                    && !toCommit.getBlobs().containsKey(file)) {
-                Utils.restrictedDelete(file);
-            }
-        }
-
-        for (Map.Entry<String, String> blob : toCommit.getBlobs().entrySet()) {
-
-            File filePath = new File(blobDir + blob.getValue() + ".txt");
-            byte[] fileContent = Utils.readContents(filePath);
-            File newFile = new File(blob.getKey());
-            Utils.writeContents(newFile, fileContent);
+        Commit toCommit = repo.getCommit(commitName);
+        if (!switchFiles(getCurCommit(), toCommit)) {
+            return;
         }
 
-
-        stage = getStage();
+        Staging stage = repo.getStage();
         stage.clear();
-        Utils.writeObject(new File(stageDir + "stage.txt"), stage);
-        Utils.writeContents(
-                new File(branchDir + getHeadBr() + ".txt"), commitName);
+        repo.stageChanged();
+        repo.getGraph().add(commitName);
+        repo.setBranch(getHeadBr(), commitName);
 
     }
 
 
+    public static void repack() {
+        if (!Repository.exists()) {
+            out.println(
+                    "Not in an initialized Gitlet directory.");
+            return;
+        }
+        repo.getObjects().repack();
+    }
+
     public static void merge(String other) {
         if (mergeError(other)) {
             return;
         }
-
-
+        CommitGraph graph = repo.getGraph();
+        String curHash = getHeadCommit();
+        String otherHash = repo.getBranch(other);
+        int base = graph.mergeBase(graph.add(curHash), graph.add(otherHash));
+        String splitHash = base < 0 ? null : graph.id(base).toHex();
+        if (otherHash.equals(splitHash)) {
+            out.println(
+                    "Given branch is an ancestor of the current branch.");
+            return;
+        }
+        if (curHash.equals(splitHash)) {
+            checkoutBranch(other);
+            out.println("Current branch fast-forwarded.");
+            return;
+        }
+        TreeMap<String, String> splitBlobs = splitHash == null
+                ? new TreeMap<String, String>()
+                : repo.getCommit(splitHash).getBlobs();
+        Commit otherCommit = repo.getCommit(otherHash);
+        TreeMap<String, String> changes = new TreeMap<>();
+        boolean conflict = mergeFiles(splitBlobs, getCurCommit().getBlobs(),
+                otherCommit.getBlobs(), changes);
+        makeCommit("Merged " + other + " into " + getHeadBr() + ".",
+                changes, otherHash);
+        if (conflict) {
+            out.println("Encountered a merge conflict.");
+        }
     }
 
     public static boolean mergeError(String other) {
-        stage = getStage();
+        Staging stage = repo.getStage();
         if (!stage.getAdd().isEmpty() || !stage.getRemove().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
+            out.println("You have uncommitted changes.");
             return true;
-        } else if (!(new File(branchDir + other + ".txt")).exists()) {
-            System.out.println("A branch with that name does not exist.");
+        } else if (!repo.hasBranch(other)) {
+            out.println("A branch with that name does not exist.");
             return true;
         } else if (other.equals(getHeadBr())) {
-            System.out.println("Cannot merge a branch with itself.");
+            out.println("Cannot merge a branch with itself.");
             return true;
         }
         return mergeUntracked(other);
@@ -644,17 +813,14 @@ public class Main {
 
     public static boolean mergeUntracked(String other) {
         Commit curCommit = getCurCommit();
-        String otherCommitSt = Utils.readContentsAsString
-                (new File(branchDir + other + ".txt"));
-        Commit otherCommit = Utils.readObject
-                (new File(commitDir + otherCommitSt + ".txt"), Commit.class);
+        Commit otherCommit = repo.getCommit(repo.getBranch(other));
 
-        List<String> cwdFiles = Utils.plainFilenamesIn(cwd);
+        List<String> cwdFiles = Utils.plainFilenamesIn(repo.getCwd());
         for (int i = 0; i < cwdFiles.size(); i++) {
             if (!curCommit.getBlobs().containsKey
                     (cwdFiles.get(i)) && otherCommit.getBlobs().
                     containsKey(cwdFiles.get(i))) {
-                System.out.println(
+                out.println(
                         "There is an untracked file in the way; delete it,"
                                  + " or add and commit it first.");
                 return true;
@@ -663,61 +829,64 @@ public class Main {
         return false;
     }
 
-    public static void mergeFiles(Commit split, Commit curr, Commit other) {
-        ArrayList<String> allFile = findAllFiles(split, curr, other);
-        ArrayList<String> toCommit = new ArrayList<>();
-        for (String file : allFile) {
-            Commit modified = isModified(file, split, curr, other);
-            if (modified == null) {
-                toCommit.add(file);
+    /**
+     * Merge the files of OTHER into those of CURR, given the files of
+     * their split point SPLIT (each a map from path to blob hash), in
+     * the working directory.  A file changed in both branches is merged
+     * line by line, and these merges run in parallel.  Record in CHANGES
+     * the new blob hash of each path that changes in the current branch,
+     * or null if it is removed.  Return true iff any file was in
+     * conflict.
+     */
+    public static boolean mergeFiles(TreeMap<String, String> split,
+                                     TreeMap<String, String> curr,
+                                     TreeMap<String, String> other,
+                                     TreeMap<String, String> changes) {
+        ObjectStore objects = repo.getObjects();
+        TreeSet<String> allFiles = new TreeSet<>(split.keySet());
+        allFiles.addAll(curr.keySet());
+        allFiles.addAll(other.keySet());
+        List<LineMerge> merges = new ArrayList<>();
+        List<File> mergedFiles = new ArrayList<>();
+        for (String file : allFiles) {
+            String splitHash = split.get(file);
+            String currHash = curr.get(file);
+            String otherHash = other.get(file);
+            if (Objects.equals(currHash, otherHash)
+                    || Objects.equals(splitHash, otherHash)) {
+                continue;
             }
-            toCommit.add(modified.getBlobs().get(file));
-
-        }
-
-    }
-
-    public static Commit isModified(
-            String file, Commit split, Commit curr, Commit other) {
-        String splitHash = split.getBlobs().get(file);
-        String otherHash = other.getBlobs().get(file);
-        String currHash = curr.getBlobs().get(file);
-
-        if (splitHash.equals(otherHash) && splitHash.equals(currHash)) {
-            return null;
-        }
-        if (!splitHash.equals(otherHash) && !splitHash.equals(currHash)) {
-            return split;
-        }
-        if (!splitHash.equals(otherHash) && splitHash.equals(currHash)) {
-            return other;
-        }
-        if (splitHash.equals(otherHash) && !splitHash.equals(currHash)) {
-            return curr;
-        }
-        return null;
-    }
-
-    public static ArrayList<String> findAllFiles(
-            Commit split, Commit curr, Commit other) {
-        ArrayList<String> allFiles = new ArrayList<String>();
-        for (Map.Entry<String, String> blob : split.getBlobs().entrySet()) {
-            allFiles.add(blob.getKey());
-        }
-
-        for (Map.Entry<String, String> blob : curr.getBlobs().entrySet()) {
-            if (!allFiles.contains(blob)) {
-                allFiles.add(blob.getKey());
+            if (!Objects.equals(splitHash, currHash)) {
+                merges.add(new LineMerge(blob(splitHash), blob(currHash),
+                        blob(otherHash)));
+                mergedFiles.add(new File(file));
+                continue;
             }
-        }
-
-        for (Map.Entry<String, String> blob : other.getBlobs().entrySet()) {
-            if (!allFiles.contains(blob)) {
-                allFiles.add(blob.getKey());
+            if (otherHash == null) {
+                Utils.restrictedDelete(file);
+            } else {
+                Utils.writeContents(new File(file), objects.get(otherHash));
             }
+            changes.put(file, otherHash);
+        }
+        boolean[] conflicts = LineMerge.mergeAll(merges, mergedFiles,
+                Hasher.threads());
+        boolean conflict = false;
+        for (int i = 0; i < conflicts.length; i += 1) {
+            String file = mergedFiles.get(i).getPath();
+            String currHash = curr.get(file);
+            ObjectId result = objects.putFile(mergedFiles.get(i),
+                    currHash == null ? null : ObjectId.fromHex(currHash));
+            changes.put(file, result.toHex());
+            conflict |= conflicts[i];
+        }
+        return conflict;
+    }
 
-        }
-
-        return allFiles;
+    /**
+     * Return the contents of the blob HASH, or null if HASH is null.
+     */
+    private static byte[] blob(String hash) {
+        return hash == null ? null : repo.getObjects().get(hash);
     }
 }
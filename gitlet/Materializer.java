@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes blobs out as working files in a pipeline.  The calling thread
+ * reads the store: it looks up each blob and, if the blob is packed as a
+ * delta, rebuilds its contents there, where the store's cache of recent
+ * bases serves whole chains.  A bounded pool of writer threads creates
+ * the files: a blob stored whole is copied straight from the pack with
+ * FileChannel.transferTo, without passing through the heap, and a
+ * rebuilt one is written from memory.  The queue in front of the
+ * writers is short, and a full queue makes the reader write the next
+ * file itself, so at most a few rebuilt blobs are held at once.
+ *
+ * @author Sasha L.
+ */
+class Materializer {
+    /**
+     * Number of files that may wait for a writer, per writer.
+     */
+    private static final int QUEUE_PER_THREAD = 4;
+
+    /**
+     * Store holding the blobs.
+     */
+    private final ObjectStore store;
+    /**
+     * Cache to record written files in, or null.
+     */
+    private final StatCache index;
+    /**
+     * Number of writer threads.
+     */
+    private final int threads;
+
+    /**
+     * A materializer of blobs from STORE on THREADS writer threads,
+     * which records the files it writes in INDEX unless that is null.
+     */
+    Materializer(ObjectStore store, StatCache index, int threads) {
+        this.store = store;
+        this.index = index;
+        this.threads = threads;
+    }
+
+    /**
+     * Overwrite each of FILES with the blob at the same position of IDS.
+     */
+    void write(List<File> files, List<ObjectId> ids) {
+        if (threads <= 1 || files.size() <= 1) {
+            for (int i = 0; i < files.size(); i += 1) {
+                write(files.get(i), ids.get(i), read(ids.get(i)));
+            }
+            return;
+        }
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_PER_THREAD * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Future<?>> done = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i += 1) {
+                File file = files.get(i);
+                ObjectId id = ids.get(i);
+                byte[] contents = read(id);
+                done.add(writers.submit(() -> write(file, id, contents)));
+            }
+            for (Future<?> task : done) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof GitletException) {
+                throw (GitletException) cause;
+            }
+            throw Utils.error("Checkout failed: %s", excp.getMessage());
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the contents of blob ID if it must be rebuilt from a delta,
+     * or null if it can be copied from the store as it is.
+     */
+    private byte[] read(ObjectId id) {
+        return store.isWhole(id) ? null : store.get(id);
+    }
+
+    /**
+     * Overwrite FILE with blob ID, whose contents are CONTENTS if they
+     * have been read, or null if ID is to be copied from the store.
+     */
+    private void write(File file, ObjectId id, byte[] contents) {
+        if (contents != null) {
+            Utils.writeContents(file, contents);
+        } else {
+            try (FileChannel out = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (!store.transferTo(id, out)) {
+                    throw Utils.error("No object %s in store.", id);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write %s: %s", file.getPath(),
+                        excp.getMessage());
+            }
+        }
+        if (index != null) {
+            index.record(file, id);
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.UID_BYTES;
+
+/**
+ * A persistent index of commit messages, so that find need not read
+ * every commit.  Each record holds a commit's id and message.  The file
+ * holds a header (magic, version, number of sorted records, number of
+ * recent records, offset of the end of the last counted record), a
+ * table of the offsets of the sorted records and of the end of the last
+ * of them, the records sorted by message, and then the records of recent
+ * commits, unsorted, in the order they were made.  Adding a commit reads
+ * only the header, appends its record and then updates the header, so a
+ * record cut off by a crash is ignored; once there are more than
+ * MAX_RECENT recent records, the file is rewritten with all of them
+ * sorted.  The sorted part is memory-mapped, and exact and prefix
+ * queries find their messages in it by binary search, then scan the
+ * recent records.  Substring queries build a table of the trigrams
+ * (three-character substrings) of all messages the first time they are
+ * needed, and it serves any later queries made by the same process.
+ * The index is rebuilt from the commits if it is missing or corrupt, as
+ * in a repository made by an earlier version.
+ *
+ * @author Sasha L.
+ */
+class MessageIndex {
+    /**
+     * Magic number that starts an index file ("GMSG").
+     */
+    private static final int MAGIC = 0x474d5347;
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 2;
+    /**
+     * Size of the header: magic, version, sorted count, recent count,
+     * end.
+     */
+    private static final int HEADER_SIZE = 24;
+    /**
+     * Largest number of recent records kept before the file is
+     * rewritten.
+     */
+    static final int MAX_RECENT = 256;
+
+    /**
+     * The index file.
+     */
+    private final File file;
+    /**
+     * Directory holding the commits, as COMMITID.txt.
+     */
+    private final File commitDir;
+    /**
+     * Store holding the commits' trees.
+     */
+    private final ObjectStore store;
+    /**
+     * Mapping of the header, offset table and sorted records, or null if
+     * the index is not yet loaded.
+     */
+    private MappedByteBuffer sorted;
+    /**
+     * Number of sorted records.
+     */
+    private int count;
+    /**
+     * Ids of the recent commits, and their messages, in the order they
+     * were added.
+     */
+    private List<ObjectId> recentIds;
+    /**
+     * See recentIds.
+     */
+    private List<String> recentMessages;
+    /**
+     * Ids of all indexed commits, by message, or null until a substring
+     * query.
+     */
+    private HashMap<String, List<ObjectId>> byMessage;
+    /**
+     * The distinct indexed messages, and for each trigram the indices in
+     * messages of the messages containing it, or null until a substring
+     * query.
+     */
+    private List<String> messages;
+    /**
+     * See messages.
+     */
+    private HashMap<Long, int[]> trigrams;
+
+    /**
+     * An index kept in FILE of the messages of the commits in COMMITDIR,
+     * whose trees are in STORE.  Nothing is read until it is first used.
+     */
+    MessageIndex(File file, File commitDir, ObjectStore store) {
+        this.file = file;
+        this.commitDir = commitDir;
+        this.store = store;
+    }
+
+    /**
+     * Record that commit HASH, which is in the commit directory, has
+     * message MESSAGE.  Only the header is read.  If the index is
+     * missing or corrupt, nothing is written, since rebuilding it will
+     * find the commit.
+     */
+    void add(String hash, String message) {
+        if (!file.isFile()) {
+            return;
+        }
+        ObjectId id = ObjectId.fromHex(hash);
+        byte[] record = encode(id, message);
+        boolean full;
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()
+                    && out.read(header, header.position()) > 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC
+                    || header.getInt() != VERSION) {
+                return;
+            }
+            int n = header.getInt(), m = header.getInt();
+            long at = header.getLong();
+            if (n < 0 || m < 0 || at < HEADER_SIZE || at > out.size()) {
+                return;
+            }
+            full = m >= MAX_RECENT;
+            if (!full) {
+                writeFully(out, record, at);
+                out.truncate(at + record.length);
+                writeFully(out, ByteBuffer.allocate(12).putInt(m + 1)
+                        .putLong(at + record.length).array(), 12);
+                if (sorted != null) {
+                    recentIds.add(id);
+                    recentMessages.add(message);
+                }
+                byMessage = null;
+                messages = null;
+                trigrams = null;
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                    excp.getMessage());
+        }
+        if (full) {
+            TreeMap<String, List<ObjectId>> all = all();
+            if (all != null) {
+                all.computeIfAbsent(message, k -> new ArrayList<>()).add(id);
+                write(all);
+            }
+        }
+    }
+
+    /**
+     * Return the ids of the commits whose message is MESSAGE, in order.
+     */
+    List<String> exact(String message) {
+        return query(message, false);
+    }
+
+    /**
+     * Return the ids of the commits whose messages start with PREFIX, in
+     * order.
+     */
+    List<String> prefix(String prefix) {
+        return query(prefix, true);
+    }
+
+    /**
+     * Return the ids of the commits whose messages contain TEXT, in
+     * order.  Only messages holding every trigram of TEXT are examined.
+     */
+    List<String> substring(String text) {
+        if (trigrams == null) {
+            indexTrigrams();
+        }
+        int[] candidates = null;
+        for (int i = 0; i + 3 <= text.length(); i += 1) {
+            int[] posting = trigrams.get(trigram(text, i));
+            if (posting == null) {
+                return List.of();
+            }
+            candidates = candidates == null ? posting
+                : intersect(candidates, posting);
+        }
+        List<ObjectId> result = new ArrayList<>();
+        if (candidates == null) {
+            for (String message : messages) {
+                if (message.contains(text)) {
+                    result.addAll(byMessage.get(message));
+                }
+            }
+        } else {
+            for (int k = 1; k <= candidates[0]; k += 1) {
+                String message = messages.get(candidates[k]);
+                if (message.contains(text)) {
+                    result.addAll(byMessage.get(message));
+                }
+            }
+        }
+        return hexes(result);
+    }
+
+    /**
+     * Return the ids of the commits whose messages are KEY, or start
+     * with KEY if PREFIX, in order, rebuilding the index if it turns out
+     * to be corrupt.
+     */
+    private List<String> query(String key, boolean prefix) {
+        load();
+        List<ObjectId> result = search(key, prefix);
+        if (result == null) {
+            rebuild();
+            result = search(key, prefix);
+            if (result == null) {
+                throw Utils.error("Cannot read message index.");
+            }
+        }
+        return hexes(result);
+    }
+
+    /**
+     * Return the ids of the commits whose messages are KEY, or start
+     * with KEY if PREFIX, or null if a sorted record is corrupt.  The
+     * sorted records are searched from the first whose message is not
+     * less than KEY.
+     */
+    private List<ObjectId> search(String key, boolean prefix) {
+        List<ObjectId> result = new ArrayList<>();
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            String message = message(mid);
+            if (message == null) {
+                return null;
+            }
+            if (message.compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < count; k += 1) {
+            String message = message(k);
+            if (message == null) {
+                return null;
+            }
+            if (prefix ? !message.startsWith(key) : !message.equals(key)) {
+                break;
+            }
+            result.add(id(k));
+        }
+        for (int k = 0; k < recentIds.size(); k += 1) {
+            String message = recentMessages.get(k);
+            if (prefix ? message.startsWith(key) : message.equals(key)) {
+                result.add(recentIds.get(k));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the offset of sorted record K, or of the end of the sorted
+     * records if K is count.
+     */
+    private long offset(int k) {
+        return sorted.getLong(HEADER_SIZE + 8 * k);
+    }
+
+    /**
+     * Return the message of sorted record K, or null if the record does
+     * not fill the space the offset table gives it.
+     */
+    private String message(int k) {
+        long at = offset(k), next = offset(k + 1);
+        if (at < HEADER_SIZE || next > sorted.capacity()
+                || next - at < UID_BYTES + 4
+                || sorted.getInt((int) at + UID_BYTES)
+                    != next - at - UID_BYTES - 4) {
+            return null;
+        }
+        byte[] raw = new byte[(int) (next - at - UID_BYTES - 4)];
+        sorted.get((int) at + UID_BYTES + 4, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the id of sorted record K, whose message has been read.
+     */
+    private ObjectId id(int k) {
+        byte[] raw = new byte[UID_BYTES];
+        sorted.get((int) offset(k), raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Return the ids of all indexed commits by message, or null if the
+     * index is corrupt.
+     */
+    private TreeMap<String, List<ObjectId>> all() {
+        load();
+        TreeMap<String, List<ObjectId>> result = new TreeMap<>();
+        for (int k = 0; k < count; k += 1) {
+            String message = message(k);
+            if (message == null) {
+                return null;
+            }
+            result.computeIfAbsent(message, x -> new ArrayList<>())
+                .add(id(k));
+        }
+        for (int k = 0; k < recentIds.size(); k += 1) {
+            result.computeIfAbsent(recentMessages.get(k),
+                    x -> new ArrayList<>()).add(recentIds.get(k));
+        }
+        return result;
+    }
+
+    /**
+     * Map the index file, if that has not been done, rebuilding it from
+     * the commits if it is missing or corrupt.
+     */
+    private void load() {
+        if (sorted == null && !read()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Map the index file and read its recent records, and return true,
+     * or return false if it is missing or corrupt.
+     */
+    private boolean read() {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()
+                    && in.read(header, header.position()) > 0) {
+                continue;
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return false;
+            }
+            int n = header.getInt(), m = header.getInt();
+            long last = header.getLong();
+            long records = HEADER_SIZE + 8L * (n + 1);
+            if (n < 0 || m < 0 || last > size || last > Integer.MAX_VALUE
+                    || records > last) {
+                return false;
+            }
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, last);
+            long start = map.getLong(HEADER_SIZE + 8 * n);
+            if (map.getLong(HEADER_SIZE) != records || start < records
+                    || start > last) {
+                return false;
+            }
+            List<ObjectId> ids = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            ByteBuffer recent = map.duplicate();
+            recent.position((int) start);
+            for (int k = 0; k < m; k += 1) {
+                if (recent.remaining() < UID_BYTES + 4) {
+                    return false;
+                }
+                byte[] raw = new byte[UID_BYTES];
+                recent.get(raw);
+                int length = recent.getInt();
+                if (length < 0 || length > recent.remaining()) {
+                    return false;
+                }
+                byte[] text = new byte[length];
+                recent.get(text);
+                ids.add(ObjectId.fromBytes(raw, 0));
+                texts.add(new String(text, StandardCharsets.UTF_8));
+            }
+            if (recent.hasRemaining()) {
+                return false;
+            }
+            sorted = map;
+            count = n;
+            recentIds = ids;
+            recentMessages = texts;
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Index every commit in commitDir.
+     */
+    private void rebuild() {
+        TreeMap<String, List<ObjectId>> all = new TreeMap<>();
+        List<String> names = Utils.plainFilenamesIn(commitDir);
+        for (String name : names == null ? List.<String>of() : names) {
+            Commit commit = Commit.read(new File(commitDir, name), store);
+            all.computeIfAbsent(commit.getLog(), k -> new ArrayList<>())
+                .add(ObjectId.fromHex(commit.getHash()));
+        }
+        write(all);
+    }
+
+    /**
+     * Replace the index file with one holding the commits in ALL, by
+     * message, all sorted, and map it.  The new file is written beside
+     * the old one and renamed over it.
+     */
+    private void write(TreeMap<String, List<ObjectId>> all) {
+        List<byte[]> records = new ArrayList<>();
+        for (Map.Entry<String, List<ObjectId>> entry : all.entrySet()) {
+            for (ObjectId id : new TreeSet<>(entry.getValue())) {
+                records.add(encode(id, entry.getKey()));
+            }
+        }
+        int n = records.size();
+        long at = HEADER_SIZE + 8L * (n + 1);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(temp.toPath())))) {
+            long last = at;
+            for (byte[] record : records) {
+                last += record.length;
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(0);
+            out.writeLong(last);
+            for (byte[] record : records) {
+                out.writeLong(at);
+                at += record.length;
+            }
+            out.writeLong(at);
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                    excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                    excp.getMessage());
+        }
+        sorted = null;
+        byMessage = null;
+        messages = null;
+        trigrams = null;
+        if (!read()) {
+            throw Utils.error("Cannot read message index.");
+        }
+    }
+
+    /**
+     * Build the table of trigrams of the distinct messages.  Each posting
+     * list holds its length in element 0 and increasing message indices
+     * after it.
+     */
+    private void indexTrigrams() {
+        TreeMap<String, List<ObjectId>> all = all();
+        if (all == null) {
+            rebuild();
+            all = all();
+        }
+        byMessage = new HashMap<>(all);
+        messages = new ArrayList<>(all.keySet());
+        trigrams = new HashMap<>();
+        for (int m = 0; m < messages.size(); m += 1) {
+            String message = messages.get(m);
+            for (int i = 0; i + 3 <= message.length(); i += 1) {
+                long key = trigram(message, i);
+                int[] posting = trigrams.get(key);
+                if (posting == null) {
+                    posting = new int[4];
+                } else if (posting[posting[0]] == m) {
+                    continue;
+                } else if (posting[0] + 1 == posting.length) {
+                    posting = Arrays.copyOf(posting, 2 * posting.length);
+                }
+                posting[0] += 1;
+                posting[posting[0]] = m;
+                trigrams.put(key, posting);
+            }
+        }
+    }
+
+    /**
+     * Return the trigram of S starting at I, packed into a long.
+     */
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16)
+            | s.charAt(i + 2);
+    }
+
+    /**
+     * Return the posting list of the indices in both posting lists A and
+     * B.
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a[0], b[0]) + 1];
+        int i, j;
+        i = j = 1;
+        while (i <= a[0] && j <= b[0]) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[0] += 1;
+                result[result[0]] = a[i];
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the hexadecimal forms of IDS, sorted.
+     */
+    private static List<String> hexes(List<ObjectId> ids) {
+        List<String> result = new ArrayList<>();
+        for (ObjectId id : new TreeSet<>(ids)) {
+            result.add(id.toHex());
+        }
+        return result;
+    }
+
+    /**
+     * Return the record for commit ID with message MESSAGE.
+     */
+    private static byte[] encode(ObjectId id, String message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            id.writeTo(out);
+            Utils.writeString(out, message);
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding message index.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write all of DATA to OUT at OFFSET.
+     */
+    private static void writeFully(FileChannel out, byte[] data,
+                                   long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long pos = offset;
+        while (buf.hasRemaining()) {
+            pos += out.write(buf, pos);
+        }
+    }
+}
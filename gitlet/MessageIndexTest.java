@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the message index and its file.
+ *  @author Sasha L.
+ */
+public class MessageIndexTest {
+
+    /** Return the sorted ids of those of COMMITS whose messages start
+     *  with PREFIX. */
+    private static TreeSet<String> starting(List<Commit> commits,
+                                            String prefix) {
+        TreeSet<String> result = new TreeSet<>();
+        for (Commit commit : commits) {
+            if (commit.getLog().startsWith(prefix)) {
+                result.add(commit.getHash());
+            }
+        }
+        return result;
+    }
+
+    /** Check that INDEX answers queries about COMMITS, all of which
+     *  have messages "message I" for different I. */
+    private static void check(MessageIndex index, List<Commit> commits) {
+        for (Commit commit : List.of(commits.get(0), commits.get(7),
+                commits.get(commits.size() - 1))) {
+            assertEquals(List.of(commit.getHash()),
+                         index.exact(commit.getLog()));
+        }
+        assertEquals(List.of(), index.exact("message"));
+        assertEquals(starting(commits, "message 1"),
+                     new TreeSet<>(index.prefix("message 1")));
+        assertEquals(starting(commits, "message 2"),
+                     new TreeSet<>(index.substring("sage 2")));
+        assertEquals(commits.size(), index.substring("mess").size());
+    }
+
+    /** Commits added one at a time, past the point where the file is
+     *  rewritten sorted, are found in this index and the next. */
+    @Test
+    public void addAndQuery() {
+        File dir = TestFiles.tempDir("commits");
+        File commitDir = new File(dir, "commits");
+        ObjectStore store = new ObjectStore(dir);
+        File file = new File(dir, "messages");
+        List<Commit> commits = new ArrayList<>(BenchSetup.commitLine(
+                commitDir, store, 10, i -> "message " + i));
+        MessageIndex index = new MessageIndex(file, commitDir, store);
+        check(index, commits);
+        String parent = commits.get(9).getHash();
+        for (int i = 10; i < 10 + MessageIndex.MAX_RECENT + 20; i += 1) {
+            Commit commit = new Commit("message " + i,
+                    commits.get(9).getTree(), parent, store);
+            commit.write(new File(commitDir, commit.getHash() + ".txt"));
+            index.add(commit.getHash(), commit.getLog());
+            commits.add(commit);
+            parent = commit.getHash();
+        }
+        check(index, commits);
+        check(new MessageIndex(file, commitDir, store), commits);
+    }
+
+    /** A damaged index file is rebuilt from the commits. */
+    @Test
+    public void damaged() {
+        File dir = TestFiles.tempDir("commits");
+        File commitDir = new File(dir, "commits");
+        ObjectStore store = new ObjectStore(dir);
+        File file = new File(dir, "messages");
+        List<Commit> commits = BenchSetup.commitLine(commitDir, store, 30,
+                i -> "message " + i);
+        check(new MessageIndex(file, commitDir, store), commits);
+        TestFiles.eachDamage(file,
+            () -> check(new MessageIndex(file, commitDir, store), commits));
+    }
+
+    /** A commit added while there is no index file leaves it missing,
+     *  and the index built later finds the commit. */
+    @Test
+    public void addWithoutFile() {
+        File dir = TestFiles.tempDir("commits");
+        File commitDir = new File(dir, "commits");
+        ObjectStore store = new ObjectStore(dir);
+        File file = new File(dir, "messages");
+        List<Commit> commits = BenchSetup.commitLine(commitDir, store, 10,
+                i -> "message " + i);
+        MessageIndex index = new MessageIndex(file, commitDir, store);
+        Commit last = commits.get(9);
+        index.add(last.getHash(), last.getLog());
+        assertFalse(file.exists());
+        check(index, commits);
+    }
+}
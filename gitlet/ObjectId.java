@@ -0,0 +1,265 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static gitlet.Utils.UID_BYTES;
+import static gitlet.Utils.UID_LENGTH;
+
+/**
+ * A SHA-1 object id held as its 20 raw bytes, packed into three
+ * primitive fields so that ids can be compared, hashed and used as map
+ * keys without touching their 40-character hexadecimal form.  Ids order
+ * as their hexadecimal numerals do.
+ *
+ * @author Sasha L.
+ */
+final class ObjectId implements Comparable<ObjectId> {
+    /**
+     * Bytes 0-7 and 8-15 of the id, big-endian.
+     */
+    private final long w1, w2;
+    /**
+     * Bytes 16-19 of the id, big-endian.
+     */
+    private final int w3;
+
+    /**
+     * The id whose bytes are W1, W2 and W3, big-endian.
+     */
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /**
+     * Return the id whose UID_BYTES bytes start at RAW[OFFSET].
+     */
+    static ObjectId fromBytes(byte[] raw, int offset) {
+        return new ObjectId(getLong(raw, offset), getLong(raw, offset + 8),
+                (int) getBits(raw, offset + 16, 4));
+    }
+
+    /**
+     * Return the id denoted by the hexadecimal numeral HEX.
+     */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("malformed UID: " + hex);
+        }
+        return new ObjectId(parse(hex, 0, 16), parse(hex, 16, 16),
+                (int) parse(hex, 32, 8));
+    }
+
+    /**
+     * Return the least id (if LAST is false) or the greatest (if LAST is
+     * true) whose hexadecimal numeral starts with PREFIX, or null if
+     * PREFIX is not a hexadecimal numeral of at most UID_LENGTH digits.
+     * The ids starting with PREFIX are those between the two.
+     */
+    static ObjectId bound(String prefix, boolean last) {
+        if (prefix.isEmpty() || prefix.length() > UID_LENGTH) {
+            return null;
+        }
+        char[] hex = new char[UID_LENGTH];
+        Arrays.fill(hex, last ? 'f' : '0');
+        prefix.getChars(0, prefix.length(), hex, 0);
+        try {
+            return fromHex(new String(hex));
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the id written by writeTo on IN.
+     */
+    static ObjectId readFrom(DataInput in) throws IOException {
+        return new ObjectId(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    /**
+     * Return the id of CONTENTS.
+     */
+    static ObjectId of(byte[] contents) {
+        MessageDigest md = Utils.sha1Digest();
+        md.update(contents);
+        return fromBytes(md.digest(), 0);
+    }
+
+    /**
+     * Return the id of the contents of FILE, which is read through a
+     * fixed-size buffer rather than all at once.  Throws
+     * IllegalArgumentException in case of problems.
+     */
+    static ObjectId ofFile(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MessageDigest md = Utils.sha1Digest();
+            ByteBuffer buf = Utils.ioBuffer();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            return fromBytes(md.digest(), 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Copy the UID_BYTES bytes of this id into DEST at OFFSET.
+     */
+    void copyTo(byte[] dest, int offset) {
+        putBits(dest, offset, w1, 8);
+        putBits(dest, offset + 8, w2, 8);
+        putBits(dest, offset + 16, w3, 4);
+    }
+
+    /**
+     * Write the UID_BYTES bytes of this id to OUT.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(w1);
+        out.writeLong(w2);
+        out.writeInt(w3);
+    }
+
+    /**
+     * Return the UID_BYTES bytes of this id.
+     */
+    byte[] toBytes() {
+        byte[] result = new byte[UID_BYTES];
+        copyTo(result, 0);
+        return result;
+    }
+
+    /**
+     * Return the hexadecimal numeral for this id.
+     */
+    String toHex() {
+        char[] result = new char[UID_LENGTH];
+        hexDigits(result, 0, w1, 16);
+        hexDigits(result, 16, w2, 16);
+        hexDigits(result, 32, w3, 8);
+        return new String(result);
+    }
+
+    /**
+     * Return true iff HEX is the hexadecimal numeral for this id.  Does
+     * not allocate.
+     */
+    boolean equalsHex(String hex) {
+        if (hex == null || hex.length() != UID_LENGTH) {
+            return false;
+        }
+        try {
+            return parse(hex, 0, 16) == w1 && parse(hex, 16, 16) == w2
+                && (int) parse(hex, 32, 8) == w3;
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the first byte of this id, as an unsigned value.
+     */
+    int firstByte() {
+        return (int) (w1 >>> 56);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(w1, other.w1);
+        if (c == 0) {
+            c = Long.compareUnsigned(w2, other.w2);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w3, other.w3);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w1 >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    /**
+     * Return the big-endian long at RAW[OFFSET].
+     */
+    private static long getLong(byte[] raw, int offset) {
+        return getBits(raw, offset, 8);
+    }
+
+    /**
+     * Return the N bytes at RAW[OFFSET], big-endian.
+     */
+    private static long getBits(byte[] raw, int offset, int n) {
+        long result = 0;
+        for (int i = 0; i < n; i += 1) {
+            result = (result << 8) | (raw[offset + i] & 0xff);
+        }
+        return result;
+    }
+
+    /**
+     * Store the low N bytes of VAL into DEST at OFFSET, big-endian.
+     */
+    private static void putBits(byte[] dest, int offset, long val, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            dest[offset + i] = (byte) val;
+            val >>>= 8;
+        }
+    }
+
+    /**
+     * Store the N low-order hexadecimal digits of VAL into DEST at
+     * OFFSET.
+     */
+    private static void hexDigits(char[] dest, int offset, long val,
+                                  int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            dest[offset + i] = Utils.HEX_DIGITS[(int) (val & 0xf)];
+            val >>>= 4;
+        }
+    }
+
+    /**
+     * Return the value of the N hexadecimal digits of HEX at OFFSET.
+     */
+    private static long parse(String hex, int offset, int n) {
+        long result = 0;
+        for (int i = offset; i < offset + n; i += 1) {
+            int d = Character.digit(hex.charAt(i), 16);
+            if (d < 0) {
+                throw new IllegalArgumentException("malformed UID: " + hex);
+            }
+            result = (result << 4) | d;
+        }
+        return result;
+    }
+}
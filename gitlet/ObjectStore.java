@@ -0,0 +1,936 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.UID_BYTES;
+
+/**
+ * Content-addressed storage for blobs.  Objects are appended to a single
+ * pack file, and an index maps each object's hash to its offset, length
+ * and kind in the pack.  The index file holds a header (magic, version,
+ * number of sorted entries, number of recent entries), a fanout table
+ * whose entry B is the number of sorted entries whose first byte is at
+ * most B, the entries sorted by hash, and then the entries of recently
+ * stored objects, unsorted.  The sorted part is memory-mapped and
+ * searched by binary search within the range the fanout table gives.
+ * Storing objects appends their entries in place and then counts them
+ * in the header, so a command that stores a few objects writes a few
+ * entries, whatever the size of the store; once there are more than
+ * MAX_RECENT recent entries, and at repack, the index is rewritten with
+ * all entries sorted.  An object is packed either whole or as a
+ * delta against an earlier object, typically the previous version of the
+ * same file; delta chains are at most MAX_DEPTH long, and recently
+ * rebuilt contents are kept in a bounded cache.  Loose objects written by
+ * earlier versions (one file per blob, named HASH.txt) are still
+ * readable, and repack moves them into the pack.
+ *
+ * @author Sasha L.
+ */
+class ObjectStore {
+    /**
+     * Name of the pack file.
+     */
+    static final String PACK_NAME = "objects.pack";
+    /**
+     * Name of the pack index file.
+     */
+    static final String INDEX_NAME = "objects.idx";
+    /**
+     * Magic number that starts an index file ("GIDX").
+     */
+    private static final int INDEX_MAGIC = 0x47494458;
+    /**
+     * Current index format version.  Version 1 indexes have no kind
+     * field, and all their objects are packed whole.  Versions 1 and 2
+     * have 4-byte lengths.  Versions 1 to 3 hold only sorted entries,
+     * after a shorter header, and are rewritten in the current version
+     * the first time objects are stored.
+     */
+    private static final int INDEX_VERSION = 4;
+    /**
+     * Size of the header of a version 1 to 3 index: magic, version,
+     * count.
+     */
+    private static final int OLD_HEADER_SIZE = 12;
+    /**
+     * Size of the index header: magic, version, sorted count, recent
+     * count.
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Size of the fanout table.
+     */
+    private static final int FANOUT_SIZE = 256 * 4;
+    /**
+     * Size of one version 1 index entry: hash, offset, length.
+     */
+    private static final int ENTRY_SIZE_V1 = UID_BYTES + 8 + 4;
+    /**
+     * Size of one version 2 index entry: hash, offset, length, kind.
+     */
+    private static final int ENTRY_SIZE_V2 = ENTRY_SIZE_V1 + 1;
+    /**
+     * Size of one index entry: hash, offset, 8-byte length, kind.
+     */
+    private static final int ENTRY_SIZE = ENTRY_SIZE_V2 + 4;
+    /**
+     * Largest number of recent, unsorted index entries kept before the
+     * index is rewritten.
+     */
+    static final int MAX_RECENT = 4096;
+    /**
+     * Kind of an object packed whole.
+     */
+    static final byte WHOLE = 0;
+    /**
+     * Kind of an object packed as the hash of its base, its chain depth
+     * and a delta from the base.
+     */
+    static final byte DELTA = 1;
+    /**
+     * Longest permitted chain of deltas.
+     */
+    static final int MAX_DEPTH = 16;
+    /**
+     * Total size in bytes of the contents kept in the cache.
+     */
+    static final long CACHE_BYTES = 16L << 20;
+    /**
+     * Files larger than this are streamed into the pack whole, rather
+     * than read into memory and considered for deltas.
+     */
+    static final long STREAM_LIMIT = 8L << 20;
+
+    /**
+     * Directory holding the pack, its index and any loose objects.
+     */
+    private final File dir;
+    /**
+     * Mapping of the header, fanout table and sorted entries of the
+     * index file, or null if there is no index file in the current
+     * version.
+     */
+    private MappedByteBuffer sorted;
+    /**
+     * Number of sorted entries in the mapping.
+     */
+    private int count;
+    /**
+     * Locations of the objects with recent entries in the index file,
+     * or of all indexed objects if the index file is of an earlier
+     * version; null until the index is loaded.
+     */
+    private HashMap<ObjectId, Location> recent;
+    /**
+     * Number of recent entries in the index file.
+     */
+    private int tail;
+    /**
+     * True iff the index file must be rewritten in full when objects are
+     * next stored.
+     */
+    private boolean rewrite;
+    /**
+     * Objects appended to the pack since the index was last written.
+     */
+    private final TreeMap<ObjectId, Location> pending = new TreeMap<>();
+    /**
+     * Recently read contents, least recently used first.
+     */
+    private final LinkedHashMap<ObjectId, byte[]> cache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Total size of the contents in cache.
+     */
+    private long cacheSize;
+    /**
+     * Open channel on the pack file, or null if not yet opened.
+     */
+    private FileChannel pack;
+
+    /**
+     * A store whose pack, index and loose objects live in DIR.  Nothing
+     * is read until the store is first used.
+     */
+    ObjectStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Return true iff an object with hash HASH is stored.
+     */
+    boolean contains(String hash) {
+        return contains(ObjectId.fromHex(hash));
+    }
+
+    /**
+     * Return true iff the object ID is stored.
+     */
+    boolean contains(ObjectId id) {
+        return locate(id) != null || looseFile(id).isFile();
+    }
+
+    /**
+     * Return the contents of the object with hash HASH.
+     */
+    byte[] get(String hash) {
+        return get(ObjectId.fromHex(hash));
+    }
+
+    /**
+     * Return the contents of the object ID.
+     */
+    synchronized byte[] get(ObjectId id) {
+        byte[] result = cache.get(id);
+        if (result != null) {
+            return result;
+        }
+        Location loc = locate(id);
+        if (loc == null) {
+            File loose = looseFile(id);
+            if (!loose.isFile()) {
+                throw Utils.error("No object %s in store.", id);
+            }
+            return Utils.readContents(loose);
+        }
+        byte[] packed = readPack(loc.offset, loc.length);
+        if (loc.kind == WHOLE) {
+            result = packed;
+        } else {
+            byte[] base = get(ObjectId.fromBytes(packed, 0));
+            result = Delta.apply(base, packed, UID_BYTES + 1);
+        }
+        remember(id, result);
+        return result;
+    }
+
+    /**
+     * Return true iff object ID is stored, and not as a delta.
+     */
+    synchronized boolean isWhole(ObjectId id) {
+        Location loc = locate(id);
+        return loc != null ? loc.kind == WHOLE : looseFile(id).isFile();
+    }
+
+    /**
+     * If object ID is stored whole, copy it to OUT, at its position,
+     * without reading it into memory, and return true; otherwise return
+     * false.  Several threads may copy at once, provided that nothing is
+     * being stored meanwhile.
+     */
+    boolean transferTo(ObjectId id, FileChannel out) {
+        Location loc;
+        FileChannel in;
+        synchronized (this) {
+            loc = locate(id);
+            if (loc == null) {
+                in = null;
+            } else if (loc.kind != WHOLE) {
+                return false;
+            } else {
+                try {
+                    in = channel();
+                } catch (IOException excp) {
+                    throw Utils.error("Cannot read pack: %s",
+                            excp.getMessage());
+                }
+            }
+        }
+        try {
+            if (in != null) {
+                transfer(in, loc.offset, loc.length, out);
+                return true;
+            }
+            File loose = looseFile(id);
+            if (!loose.isFile()) {
+                return false;
+            }
+            try (FileChannel looseIn = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                transfer(looseIn, 0, looseIn.size(), out);
+            }
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Store CONTENTS under the hash HASH, which must be the SHA-1 of
+     * CONTENTS, unless it is already present.
+     */
+    void put(String hash, byte[] contents) {
+        put(hash, contents, null);
+    }
+
+    /**
+     * Store CONTENTS under the hash HASH, which must be the SHA-1 of
+     * CONTENTS, unless it is already present.  If BASE is the hash of a
+     * stored object, such as the previous version of the same file, and
+     * a delta from it is small enough, store the delta instead.
+     */
+    void put(String hash, byte[] contents, String base) {
+        put(ObjectId.fromHex(hash), contents,
+            base == null ? null : ObjectId.fromHex(base));
+    }
+
+    /**
+     * Store CONTENTS as object ID, as for put(HASH, CONTENTS, BASE).
+     */
+    void put(ObjectId id, byte[] contents, ObjectId base) {
+        if (contains(id)) {
+            return;
+        }
+        if (base != null && !base.equals(id) && contains(base)) {
+            int depth = depth(base) + 1;
+            if (depth <= MAX_DEPTH) {
+                byte[] delta = Delta.create(get(base), contents);
+                if (delta.length + UID_BYTES + 1 < contents.length / 2) {
+                    byte[] header = new byte[UID_BYTES + 1];
+                    base.copyTo(header, 0);
+                    header[UID_BYTES] = (byte) depth;
+                    long offset = append(header);
+                    append(delta);
+                    pending.put(id, new Location(offset,
+                            header.length + delta.length, DELTA));
+                    return;
+                }
+            }
+        }
+        pending.put(id,
+                new Location(append(contents), contents.length, WHOLE));
+    }
+
+    /**
+     * Store the contents of FILE, as for put(ID, CONTENTS, BASE), and
+     * return its id.  Files larger than STREAM_LIMIT are hashed and
+     * copied into the pack in a single pass through a fixed-size
+     * buffer, so that memory use does not depend on their size.
+     */
+    ObjectId putFile(File file, ObjectId base) {
+        if (file.length() <= STREAM_LIMIT) {
+            byte[] contents = Utils.readContents(file);
+            ObjectId id = ObjectId.of(contents);
+            put(id, contents, base);
+            return id;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            FileChannel out = channel();
+            MessageDigest md = Utils.sha1Digest();
+            ByteBuffer buf = Utils.ioBuffer();
+            long offset = out.size();
+            long pos = offset;
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf.duplicate());
+                while (buf.hasRemaining()) {
+                    pos += out.write(buf, pos);
+                }
+                buf.clear();
+            }
+            ObjectId id = ObjectId.fromBytes(md.digest(), 0);
+            if (contains(id)) {
+                out.truncate(offset);
+            } else {
+                pending.put(id, new Location(offset, pos - offset, WHOLE));
+            }
+            return id;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot store %s: %s", file.getPath(),
+                    excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the hashes of all packed objects, in order.
+     */
+    List<String> packedHashes() {
+        loadIndex();
+        TreeSet<ObjectId> all = new TreeSet<>(pending.keySet());
+        all.addAll(recent.keySet());
+        for (int k = 0; k < count; k += 1) {
+            all.add(sortedId(k));
+        }
+        List<String> result = new ArrayList<>(all.size());
+        for (ObjectId id : all) {
+            result.add(id.toHex());
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of bytes the pack spends on object HASH, or -1
+     * if it is not packed.
+     */
+    long packedLength(String hash) {
+        Location loc = locate(ObjectId.fromHex(hash));
+        return loc == null ? -1 : loc.length;
+    }
+
+    /**
+     * Return the length of the delta chain leading to object HASH: 0 if
+     * it is stored whole.
+     */
+    int depth(String hash) {
+        return depth(ObjectId.fromHex(hash));
+    }
+
+    /**
+     * Return the length of the delta chain leading to object ID.
+     */
+    private int depth(ObjectId id) {
+        Location loc = locate(id);
+        if (loc == null || loc.kind == WHOLE) {
+            return 0;
+        }
+        return readPack(loc.offset + UID_BYTES, 1)[0];
+    }
+
+    /**
+     * Drop all cached contents.
+     */
+    void clearCache() {
+        cache.clear();
+        cacheSize = 0;
+    }
+
+    /**
+     * Store CONTENTS and return its hash.
+     */
+    String put(byte[] contents) {
+        ObjectId id = ObjectId.of(contents);
+        put(id, contents, null);
+        return id.toHex();
+    }
+
+    /**
+     * Move every loose object into the pack, deleting the loose files
+     * once the index that covers them is on disk, and rewrite the index
+     * with all its entries sorted.  Return the number of objects moved.
+     */
+    int repack() {
+        List<File> moved = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (!isLooseName(name)) {
+                continue;
+            }
+            ObjectId id =
+                ObjectId.fromHex(name.substring(0, Utils.UID_LENGTH));
+            File loose = new File(dir, name);
+            if (locate(id) == null) {
+                byte[] contents = Utils.readContents(loose);
+                pending.put(id, new Location(append(contents),
+                        contents.length, WHOLE));
+            }
+            moved.add(loose);
+        }
+        flush(true);
+        for (File loose : moved) {
+            loose.delete();
+        }
+        return moved.size();
+    }
+
+    /**
+     * Write the index entries of any newly appended objects, having
+     * first synced the pack they were appended to, so that the index
+     * never names objects that a crash could lose.
+     */
+    void flush() {
+        flush(false);
+    }
+
+    /**
+     * As for flush(), but rewrite the index with all its entries sorted
+     * if COMPACT, or if it has too many recent entries or is of an
+     * earlier version.  Otherwise the new entries are appended to the
+     * index file in place.
+     */
+    private void flush(boolean compact) {
+        if (pending.isEmpty() && !compact) {
+            return;
+        }
+        loadIndex();
+        if (pending.isEmpty() && tail == 0 && !rewrite) {
+            return;
+        }
+        if (!pending.isEmpty()) {
+            Journal.sync(new File(dir, PACK_NAME));
+        }
+        if (compact || rewrite || sorted == null
+                || tail + pending.size() > MAX_RECENT) {
+            writeIndex();
+        } else {
+            appendIndex();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Write any pending index entries and release the pack file.
+     */
+    void close() {
+        flush();
+        release();
+    }
+
+    /**
+     * Release the pack file without writing pending index entries, so
+     * that the objects appended since the last flush are never found.
+     */
+    void release() {
+        if (pack != null) {
+            try {
+                pack.close();
+            } catch (IOException excp) {
+                throw Utils.error("Cannot close pack: %s", excp.getMessage());
+            }
+            pack = null;
+        }
+    }
+
+    /**
+     * Return the location of the packed object ID, or null if it is not
+     * in the pack.
+     */
+    private Location locate(ObjectId id) {
+        Location loc = pending.get(id);
+        if (loc != null) {
+            return loc;
+        }
+        loadIndex();
+        loc = recent.get(id);
+        if (loc != null || count == 0) {
+            return loc;
+        }
+        int k = lowerBound(id);
+        return k < count && sortedId(k).equals(id) ? sortedLocation(k)
+            : null;
+    }
+
+    /**
+     * Return the position of the first sorted entry whose id is not less
+     * than ID, or count if there is none.  Only the entries sharing ID's
+     * first byte, as found in the fanout table, are searched.
+     */
+    private int lowerBound(ObjectId id) {
+        int first = id.firstByte();
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedId(mid).compareTo(id) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return entry B of the fanout table.
+     */
+    private int fanout(int b) {
+        return sorted.getInt(HEADER_SIZE + 4 * b);
+    }
+
+    /**
+     * Return the id of sorted entry K.
+     */
+    private ObjectId sortedId(int k) {
+        byte[] raw = new byte[UID_BYTES];
+        sorted.get(entryOffset(k), raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Return the location given by sorted entry K.
+     */
+    private Location sortedLocation(int k) {
+        int at = entryOffset(k) + UID_BYTES;
+        return new Location(sorted.getLong(at), sorted.getLong(at + 8),
+                sorted.get(at + 16));
+    }
+
+    /**
+     * Add CONTENTS, the contents of object ID, to the cache, evicting the
+     * least recently used entries as needed.
+     */
+    private void remember(ObjectId id, byte[] contents) {
+        if (contents.length > CACHE_BYTES / 4) {
+            return;
+        }
+        cache.put(id, contents);
+        cacheSize += contents.length;
+        Iterator<byte[]> eldest = cache.values().iterator();
+        while (cacheSize > CACHE_BYTES) {
+            cacheSize -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Read the index from disk, if that has not already been done: map
+     * its sorted entries and read its recent ones.  A missing index is
+     * empty.  An index whose header counts more entries than it holds is
+     * corrupt; bytes past the last counted entry, such as an entry cut
+     * off by a crash, are ignored.
+     */
+    private void loadIndex() {
+        if (recent != null) {
+            return;
+        }
+        sorted = null;
+        count = tail = 0;
+        rewrite = false;
+        File index = new File(dir, INDEX_NAME);
+        if (!index.isFile()) {
+            recent = new HashMap<>();
+            return;
+        }
+        MappedByteBuffer map;
+        try (FileChannel in = FileChannel.open(index.toPath(),
+                StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw Utils.error("Pack index too large.");
+            }
+            map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack index: %s",
+                    excp.getMessage());
+        }
+        if (map.limit() < OLD_HEADER_SIZE || map.getInt(0) != INDEX_MAGIC
+                || map.getInt(4) < 1 || map.getInt(4) > INDEX_VERSION) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        if (map.getInt(4) < INDEX_VERSION) {
+            recent = readOldIndex(map);
+            rewrite = true;
+            return;
+        }
+        if (map.limit() < HEADER_SIZE + FANOUT_SIZE) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        int n = map.getInt(8), m = map.getInt(12);
+        if (n < 0 || m < 0
+                || map.limit() < entryOffset(0) + ((long) n + m) * ENTRY_SIZE
+                || map.getInt(HEADER_SIZE + FANOUT_SIZE - 4) != n) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        for (int b = 0, last = 0; b < 256; b += 1) {
+            int total = map.getInt(HEADER_SIZE + 4 * b);
+            if (total < last || total > n) {
+                throw Utils.error("Corrupt pack index.");
+            }
+            last = total;
+        }
+        HashMap<ObjectId, Location> entries = new HashMap<>();
+        for (int k = n; k < n + m; k += 1) {
+            int at = entryOffset(k);
+            entries.put(ObjectId.fromBytes(readBytes(map, at, UID_BYTES), 0),
+                    new Location(map.getLong(at + UID_BYTES),
+                            map.getLong(at + UID_BYTES + 8),
+                            map.get(at + UID_BYTES + 16)));
+        }
+        sorted = map;
+        count = n;
+        tail = m;
+        recent = entries;
+    }
+
+    /**
+     * Return the locations of all objects in MAP, an index of version 1
+     * to 3.
+     */
+    private static HashMap<ObjectId, Location> readOldIndex(ByteBuffer map) {
+        ByteBuffer buf = map.duplicate().position(4);
+        int version = buf.getInt();
+        int n = buf.getInt();
+        int entrySize = version == 1 ? ENTRY_SIZE_V1
+                : version == 2 ? ENTRY_SIZE_V2 : ENTRY_SIZE;
+        if (n < 0 || buf.remaining() != (long) n * entrySize) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        HashMap<ObjectId, Location> result = new HashMap<>();
+        byte[] raw = new byte[UID_BYTES];
+        for (int k = 0; k < n; k += 1) {
+            buf.get(raw);
+            long offset = buf.getLong();
+            long length = version < 3 ? buf.getInt() : buf.getLong();
+            byte kind = version == 1 ? WHOLE : buf.get();
+            result.put(ObjectId.fromBytes(raw, 0),
+                    new Location(offset, length, kind));
+        }
+        return result;
+    }
+
+    /**
+     * Replace the index file with one holding all entries, sorted: those
+     * of the sorted part, the recent ones and the pending ones.  The new
+     * index is written beside the old one, synced, and renamed over it,
+     * so readers never see a partial index.  It is read again when next
+     * needed.
+     */
+    private void writeIndex() {
+        TreeMap<ObjectId, Location> added = new TreeMap<>(recent);
+        added.putAll(pending);
+        int[] fanout = new int[256];
+        for (int b = 0; b < 256 && count > 0; b += 1) {
+            fanout[b] = fanout(b);
+        }
+        for (ObjectId id : added.keySet()) {
+            for (int b = id.firstByte(); b < 256; b += 1) {
+                fanout[b] += 1;
+            }
+        }
+        File index = new File(dir, INDEX_NAME);
+        File temp = new File(dir, INDEX_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(count + added.size());
+            out.writeInt(0);
+            for (int total : fanout) {
+                out.writeInt(total);
+            }
+            int k = 0;
+            for (Map.Entry<ObjectId, Location> entry : added.entrySet()) {
+                while (k < count && sortedId(k).compareTo(entry.getKey()) < 0) {
+                    out.write(readBytes(sorted, entryOffset(k), ENTRY_SIZE));
+                    k += 1;
+                }
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+            for (; k < count; k += 1) {
+                out.write(readBytes(sorted, entryOffset(k), ENTRY_SIZE));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack index: %s",
+                    excp.getMessage());
+        }
+        Journal.sync(temp);
+        try {
+            Files.move(temp.toPath(), index.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack index: %s",
+                    excp.getMessage());
+        }
+        Journal.sync(dir);
+        recent = null;
+        sorted = null;
+    }
+
+    /**
+     * Append the pending entries to the recent entries of the index file
+     * and then count them in its header.  The entries are synced before
+     * the header is written, so that a crash cannot leave the header
+     * counting entries that are not on disk.
+     */
+    private void appendIndex() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Map.Entry<ObjectId, Location> entry : pending.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding pack index.");
+        }
+        File index = new File(dir, INDEX_NAME);
+        try (FileChannel out = FileChannel.open(index.toPath(),
+                StandardOpenOption.WRITE)) {
+            long at = entryOffset(count + tail);
+            writeFully(out, bytes.toByteArray(), at);
+            out.truncate(at + bytes.size());
+            Journal.sync(index);
+            writeFully(out, ByteBuffer.allocate(4)
+                    .putInt(tail + pending.size()).array(), 12);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack index: %s",
+                    excp.getMessage());
+        }
+        Journal.sync(index);
+        recent.putAll(pending);
+        tail += pending.size();
+    }
+
+    /**
+     * Write the index entry for object ID, at LOC, to OUT.
+     */
+    private static void writeEntry(DataOutputStream out, ObjectId id,
+                                   Location loc) throws IOException {
+        id.writeTo(out);
+        out.writeLong(loc.offset);
+        out.writeLong(loc.length);
+        out.writeByte(loc.kind);
+    }
+
+    /**
+     * Return the offset in the index file of entry K, counting the
+     * sorted entries and then the recent ones.
+     */
+    private static int entryOffset(int k) {
+        return HEADER_SIZE + FANOUT_SIZE + k * ENTRY_SIZE;
+    }
+
+    /**
+     * Return the LENGTH bytes of BUF at OFFSET.
+     */
+    private static byte[] readBytes(ByteBuffer buf, int offset,
+                                    int length) {
+        byte[] result = new byte[length];
+        buf.get(offset, result);
+        return result;
+    }
+
+    /**
+     * Write all of DATA to OUT at OFFSET.
+     */
+    private static void writeFully(FileChannel out, byte[] data,
+                                   long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long pos = offset;
+        while (buf.hasRemaining()) {
+            pos += out.write(buf, pos);
+        }
+    }
+
+    /**
+     * Append CONTENTS to the pack and return the offset it was written
+     * at.
+     */
+    private long append(byte[] contents) {
+        try {
+            FileChannel channel = channel();
+            long offset = channel.size();
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            long pos = offset;
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+            return offset;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Return LENGTH bytes of the pack starting at OFFSET.
+     */
+    private byte[] readPack(long offset, long length) {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw Utils.error("Object too large to read into memory.");
+        }
+        try {
+            FileChannel channel = channel();
+            ByteBuffer buf = ByteBuffer.allocate((int) length);
+            long pos = offset;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos);
+                if (n < 0) {
+                    throw Utils.error("Truncated pack.");
+                }
+                pos += n;
+            }
+            return buf.array();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Copy LENGTH bytes of IN starting at OFFSET to OUT.
+     */
+    private static void transfer(FileChannel in, long offset, long length,
+                                 FileChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(offset + done, length - done, out);
+            if (n <= 0) {
+                throw Utils.error("Truncated pack.");
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Return the open pack channel, opening it if needed.
+     */
+    private FileChannel channel() throws IOException {
+        if (pack == null) {
+            pack = FileChannel.open(new File(dir, PACK_NAME).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        return pack;
+    }
+
+    /**
+     * Return the loose file that would hold object ID.
+     */
+    private File looseFile(ObjectId id) {
+        return new File(dir, id.toHex() + ".txt");
+    }
+
+    /**
+     * Return true iff NAME is the name of a loose object file.
+     */
+    private static boolean isLooseName(String name) {
+        return name.length() == Utils.UID_LENGTH + 4
+                && name.endsWith(".txt");
+    }
+
+    /**
+     * Where and how an object is packed.
+     */
+    private static class Location {
+        /**
+         * Offset of the object in the pack.
+         */
+        private final long offset;
+        /**
+         * Number of bytes the object occupies in the pack.
+         */
+        private final long length;
+        /**
+         * WHOLE or DELTA.
+         */
+        private final byte kind;
+
+        /**
+         * An object of kind KIND occupying LENGTH bytes at OFFSET.
+         */
+        Location(long offset, long length, byte kind) {
+            this.offset = offset;
+            this.length = length;
+            this.kind = kind;
+        }
+    }
+}
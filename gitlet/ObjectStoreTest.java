@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the pack and pack index of ObjectStore.
+ *  @author Sasha L.
+ */
+public class ObjectStoreTest {
+
+    /** Return the header field of the pack index in DIR at OFFSET. */
+    private static int header(File dir, int offset) {
+        return ByteBuffer.wrap(Utils.readContents(
+                new File(dir, ObjectStore.INDEX_NAME))).getInt(offset);
+    }
+
+    /** Objects are found again after the store is closed and
+     *  reopened. */
+    @Test
+    public void reopen() {
+        File dir = TestFiles.tempDir();
+        Random rand = new Random(1);
+        byte[] first = TestFiles.randomBytes(rand, 8192);
+        byte[] second = TestFiles.randomBytes(rand, 100);
+        ObjectStore store = new ObjectStore(dir);
+        String a = store.put(first);
+        String b = store.put(second);
+        assertEquals(a, store.put(first));
+        store.close();
+        store = new ObjectStore(dir);
+        assertTrue(store.contains(a));
+        assertArrayEquals(first, store.get(a));
+        assertArrayEquals(second, store.get(b));
+        assertFalse(store.contains(Utils.sha1("absent")));
+        store.close();
+    }
+
+    /** Objects appended to the pack but never flushed to the index
+     *  are not found by the next store. */
+    @Test
+    public void releaseWithoutFlush() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        String kept = store.put("kept".getBytes());
+        store.flush();
+        String lost = store.put("lost".getBytes());
+        store.release();
+        store = new ObjectStore(dir);
+        assertTrue(store.contains(kept));
+        assertFalse(store.contains(lost));
+        String again = store.put("again".getBytes());
+        store.close();
+        assertArrayEquals("again".getBytes(), new ObjectStore(dir).get(again));
+    }
+
+    /** A damaged pack index never gives wrong contents: an object is
+     *  either read back whole or reported. */
+    @Test
+    public void damagedIndex() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] contents = TestFiles.randomBytes(new Random(2), 4096);
+        String hash = store.put(contents);
+        store.close();
+        TestFiles.eachDamage(new File(dir, ObjectStore.INDEX_NAME), () -> {
+            try {
+                assertArrayEquals(contents, new ObjectStore(dir).get(hash));
+            } catch (GitletException excp) {
+                assertEquals("Corrupt pack index.", excp.getMessage());
+            }
+        });
+    }
+
+    /** An object whose bytes were cut off the end of the pack is
+     *  reported. */
+    @Test(expected = GitletException.class)
+    public void truncatedPack() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        String hash = store.put(TestFiles.randomBytes(new Random(3), 4096));
+        store.close();
+        File pack = new File(dir, ObjectStore.PACK_NAME);
+        Utils.writeContents(pack,
+                Arrays.copyOf(Utils.readContents(pack), 4000));
+        new ObjectStore(dir).get(hash);
+    }
+
+    /** Loose objects from earlier versions are read, and repack moves
+     *  them into the pack. */
+    @Test
+    public void repackLoose() {
+        File dir = TestFiles.tempDir();
+        byte[] contents = "loose".getBytes();
+        String hash = Utils.sha1(contents);
+        File loose = new File(dir, hash + ".txt");
+        Utils.writeContents(loose, contents);
+        ObjectStore store = new ObjectStore(dir);
+        assertArrayEquals(contents, store.get(hash));
+        assertEquals(1, store.repack());
+        store.close();
+        assertFalse(loose.exists());
+        assertArrayEquals(contents, new ObjectStore(dir).get(hash));
+    }
+
+    /** Objects stored after the index is written are appended to it as
+     *  recent entries, found after a reopen, until there are more than
+     *  MAX_RECENT of them and the index is rewritten sorted. */
+    @Test
+    public void appendThenRewrite() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        String first = store.put("0".getBytes());
+        store.close();
+        assertEquals(1, header(dir, 8));
+        assertEquals(0, header(dir, 12));
+        long size = new File(dir, ObjectStore.INDEX_NAME).length();
+        store = new ObjectStore(dir);
+        store.put("1".getBytes());
+        store.flush();
+        store.put("2".getBytes());
+        store.close();
+        assertEquals(1, header(dir, 8));
+        assertEquals(2, header(dir, 12));
+        long entry = (new File(dir, ObjectStore.INDEX_NAME).length() - size)
+            / 2;
+        store = new ObjectStore(dir);
+        for (int i = 3; i <= ObjectStore.MAX_RECENT; i += 1) {
+            store.put(Integer.toString(i).getBytes());
+        }
+        store.close();
+        assertEquals(ObjectStore.MAX_RECENT, header(dir, 12));
+        store = new ObjectStore(dir);
+        assertArrayEquals("0".getBytes(), store.get(first));
+        String last = store.put("last".getBytes());
+        store.close();
+        int total = ObjectStore.MAX_RECENT + 2;
+        assertEquals(total, header(dir, 8));
+        assertEquals(0, header(dir, 12));
+        assertEquals(size + (total - 1) * entry,
+                new File(dir, ObjectStore.INDEX_NAME).length());
+        store = new ObjectStore(dir);
+        assertEquals(total, store.packedHashes().size());
+        for (int i = 1; i <= ObjectStore.MAX_RECENT; i += 1) {
+            byte[] contents = Integer.toString(i).getBytes();
+            assertArrayEquals(contents, store.get(Utils.sha1(contents)));
+        }
+        assertArrayEquals("last".getBytes(), store.get(last));
+        store.close();
+    }
+
+    /** Repack sorts the recent entries into the rest of the index. */
+    @Test
+    public void repackSorts() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        String a = store.put("a".getBytes());
+        store.close();
+        store = new ObjectStore(dir);
+        String b = store.put("b".getBytes());
+        store.close();
+        assertEquals(1, header(dir, 12));
+        store = new ObjectStore(dir);
+        assertEquals(0, store.repack());
+        store.close();
+        assertEquals(2, header(dir, 8));
+        assertEquals(0, header(dir, 12));
+        store = new ObjectStore(dir);
+        assertArrayEquals("a".getBytes(), store.get(a));
+        assertArrayEquals("b".getBytes(), store.get(b));
+        store.close();
+    }
+
+    /** An index of the previous version, which has no fanout table or
+     *  recent entries, is read, and is rewritten in the current version
+     *  when an object is next stored. */
+    @Test
+    public void previousVersion() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        String a = store.put("a".getBytes());
+        String b = store.put("b".getBytes());
+        store.close();
+        File index = new File(dir, ObjectStore.INDEX_NAME);
+        byte[] current = Utils.readContents(index);
+        int entries = 16 + 256 * 4;
+        ByteBuffer old = ByteBuffer.allocate(12 + current.length - entries);
+        old.putInt(header(dir, 0)).putInt(3).putInt(2);
+        old.put(current, entries, current.length - entries);
+        Utils.writeContents(index, old.array());
+        store = new ObjectStore(dir);
+        assertArrayEquals("a".getBytes(), store.get(a));
+        assertArrayEquals("b".getBytes(), store.get(b));
+        String c = store.put("c".getBytes());
+        store.close();
+        assertEquals(entries + (current.length - entries) / 2 * 3,
+                index.length());
+        assertEquals(3, header(dir, 8));
+        store = new ObjectStore(dir);
+        assertEquals(3, store.packedHashes().size());
+        assertArrayEquals("c".getBytes(), store.get(c));
+        store.close();
+    }
+}
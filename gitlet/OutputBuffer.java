@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A buffer in front of standard output for one command.  Bytes collect
+ * in a large array and reach the stream beneath in big writes: when the
+ * array fills, when the buffer is flushed, and, if a page length is
+ * given, after every page of that many lines, so that a pager reading
+ * the output sees it a screen at a time.  Printing through
+ * System.out.println instead locks and flushes the stream on every
+ * line.  Closing the buffer flushes it, but leaves the stream beneath
+ * open.
+ *
+ * @author Sasha L.
+ */
+class OutputBuffer extends OutputStream {
+    /**
+     * Size of the buffer in bytes.
+     */
+    static final int SIZE = 1 << 16;
+
+    /**
+     * The stream beneath.
+     */
+    private final OutputStream sink;
+    /**
+     * Number of lines after which to flush, or 0 to flush only when the
+     * buffer fills or is flushed.
+     */
+    private final int page;
+    /**
+     * The buffered bytes, in buf[0 .. count-1].
+     */
+    private final byte[] buf = new byte[SIZE];
+    /**
+     * Number of bytes in buf.
+     */
+    private int count;
+    /**
+     * Number of lines written since the last flush.
+     */
+    private int lines;
+
+    /**
+     * A buffer in front of SINK, flushed every PAGE lines if PAGE is
+     * positive.
+     */
+    OutputBuffer(OutputStream sink, int page) {
+        this.sink = sink;
+        this.page = Math.max(page, 0);
+    }
+
+    /**
+     * Return the page length set by the system property gitlet.pageLines,
+     * or 0 if it is not set.
+     */
+    static int pageLines() {
+        return Integer.getInteger("gitlet.pageLines", 0);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length) {
+            drain();
+        }
+        buf[count] = (byte) b;
+        count += 1;
+        if (b == '\n' && page > 0) {
+            lines += 1;
+            if (lines == page) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (page > 0) {
+            for (int i = off; i < off + len; i += 1) {
+                if (b[i] == '\n') {
+                    append(b, off, i + 1 - off);
+                    len -= i + 1 - off;
+                    off = i + 1;
+                    lines += 1;
+                    if (lines == page) {
+                        flush();
+                    }
+                }
+            }
+        }
+        append(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        sink.flush();
+        lines = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Add B[OFF .. OFF+LEN-1] to the buffer, sending the buffer beneath
+     * first if they do not fit, and sending them straight there if they
+     * fill the buffer by themselves.
+     */
+    private void append(byte[] b, int off, int len) throws IOException {
+        if (len > buf.length - count) {
+            drain();
+        }
+        if (len >= buf.length) {
+            sink.write(b, off, len);
+        } else {
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Send the buffered bytes to the stream beneath, without flushing it.
+     */
+    private void drain() throws IOException {
+        if (count > 0) {
+            sink.write(buf, 0, count);
+            count = 0;
+        }
+    }
+}
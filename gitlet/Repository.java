@@ -0,0 +1,479 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The state of the repository in the working directory, as one command
+ * (or one batch of commands) sees it.  The head, each branch, each
+ * commit and the stage are read from disk at most once, when first
+ * asked for, and kept.  Changes to the head, the branches and the stage
+ * are made in memory and marked dirty, and save writes them all back at
+ * once.  New commits are written to temporary files as they are made;
+ * save syncs them with the object store, renames them into the commit
+ * directory, then adds them to the graph and indexes, and only then
+ * updates the stage, branches and head together through a Journal, so
+ * that a crash never leaves a branch, or an index, naming a commit that
+ * is not on disk.  The indexes over the
+ * commits are opened here too, so a command reaches everything it needs
+ * through one object.  Every file read counts towards the disk.reads
+ * counter in Stats.
+ *
+ * A Daemon keeps one session open from command to command.  Between
+ * commands, refresh forgets the head, branches and stage, and stamp
+ * tells whether another process has written the files behind the
+ * store and indexes, in which case the session must be replaced.
+ *
+ * @author Sasha L.
+ */
+class Repository {
+    /**
+     * The repository directory.
+     */
+    static final String GITLET_DIR = ".gitlet/";
+    /**
+     * Commit directory.
+     */
+    private static final String COMMIT_DIR = GITLET_DIR + "commits/";
+    /**
+     * Blob directory.
+     */
+    private static final String BLOB_DIR = COMMIT_DIR + "blobs/";
+    /**
+     * Staging directory.
+     */
+    private static final String STAGE_DIR = GITLET_DIR + "staging/";
+    /**
+     * Branch directory.
+     */
+    private static final String BRANCH_DIR = GITLET_DIR + "branches/";
+    /**
+     * Name of the file, among the branches, that names the head branch.
+     */
+    private static final String HEAD = "head";
+
+    /**
+     * The working directory.
+     */
+    private final File cwd;
+    /**
+     * Store holding the contents of every blob.
+     */
+    private final ObjectStore objects;
+    /**
+     * Cache of the hashes of working files.
+     */
+    private final StatCache index;
+    /**
+     * Shape of the commit history.
+     */
+    private final CommitGraph graph;
+    /**
+     * Index of commit messages.
+     */
+    private final MessageIndex messages;
+    /**
+     * Sorted index of commit ids.
+     */
+    private final IdIndex commitIds;
+    /**
+     * Catalog of commits for global-log.
+     */
+    private final CommitCatalog catalog;
+    /**
+     * Journal through which the stage, branches and head are updated.
+     */
+    private final Journal journal;
+    /**
+     * Name of the head branch, or null if not yet read.
+     */
+    private String head;
+    /**
+     * The commit id of each branch read or changed so far, with null
+     * for a branch that does not exist or has been removed.
+     */
+    private final HashMap<String, String> branches = new HashMap<>();
+    /**
+     * The commits read or made so far, by id.
+     */
+    private final HashMap<String, Commit> commits = new HashMap<>();
+    /**
+     * The stage, or null if not yet read.
+     */
+    private Staging stage;
+    /**
+     * Temporary files holding the commits made since the last save, by
+     * id, in the order they were made.
+     */
+    private final LinkedHashMap<String, File> newCommits =
+        new LinkedHashMap<>();
+    /**
+     * Names of the branches changed since the last save.
+     */
+    private final TreeSet<String> dirtyBranches = new TreeSet<>();
+    /**
+     * True if the head or the stage has changed since the last save.
+     */
+    private boolean headDirty, stageDirty;
+
+    /**
+     * A session on the repository in working directory CWD.  A journal
+     * left by a command that did not finish is replayed first; otherwise
+     * nothing is read until it is first used.
+     */
+    Repository(File cwd) {
+        this.cwd = cwd;
+        objects = new ObjectStore(new File(BLOB_DIR));
+        index = new StatCache(new File(STAGE_DIR + "index"));
+        graph = new CommitGraph(new File(GITLET_DIR + "commit-graph"),
+                new File(COMMIT_DIR), objects);
+        messages = new MessageIndex(new File(GITLET_DIR + "message-index"),
+                new File(COMMIT_DIR), objects);
+        commitIds = new IdIndex(new File(GITLET_DIR + "commit-ids"),
+                new File(COMMIT_DIR));
+        catalog = new CommitCatalog(new File(GITLET_DIR + "commit-catalog"),
+                new File(COMMIT_DIR), objects);
+        journal = new Journal(new File(GITLET_DIR + "journal"));
+        journal.replay();
+    }
+
+    /**
+     * Return true iff there is a repository in the working directory.
+     */
+    static boolean exists() {
+        return new File(GITLET_DIR).isDirectory();
+    }
+
+    /**
+     * Create the directories of an empty repository.
+     */
+    static void create() {
+        for (String dir : List.of(GITLET_DIR, COMMIT_DIR, BLOB_DIR,
+                                  BRANCH_DIR, STAGE_DIR)) {
+            new File(dir).mkdir();
+        }
+    }
+
+    /**
+     * Return the working directory.
+     */
+    File getCwd() {
+        return cwd;
+    }
+
+    /**
+     * Return the store holding the blobs and trees.
+     */
+    ObjectStore getObjects() {
+        return objects;
+    }
+
+    /**
+     * Return the cache of the hashes of working files.
+     */
+    StatCache getIndex() {
+        return index;
+    }
+
+    /**
+     * Return the graph of the commit history.
+     */
+    CommitGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Return the index of commit messages.
+     */
+    MessageIndex getMessages() {
+        return messages;
+    }
+
+    /**
+     * Return the sorted index of commit ids.
+     */
+    IdIndex getCommitIds() {
+        return commitIds;
+    }
+
+    /**
+     * Return the catalog of commits.
+     */
+    CommitCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Return the name of the head branch.
+     */
+    String getHeadBranch() {
+        if (head == null) {
+            head = Utils.readContentsAsString(branchFile(HEAD));
+        }
+        return head;
+    }
+
+    /**
+     * Make NAME the head branch.
+     */
+    void setHeadBranch(String name) {
+        head = name;
+        headDirty = true;
+    }
+
+    /**
+     * Return the id of the commit at the head of branch NAME, or null if
+     * there is no such branch.
+     */
+    String getBranch(String name) {
+        if (!branches.containsKey(name)) {
+            File file = branchFile(name);
+            branches.put(name, file.isFile()
+                    ? Utils.readContentsAsString(file) : null);
+        }
+        return branches.get(name);
+    }
+
+    /**
+     * Return true iff there is a branch named NAME.
+     */
+    boolean hasBranch(String name) {
+        return getBranch(name) != null;
+    }
+
+    /**
+     * Point branch NAME, which need not exist, at commit HASH.
+     */
+    void setBranch(String name, String hash) {
+        branches.put(name, hash);
+        dirtyBranches.add(name);
+    }
+
+    /**
+     * Remove branch NAME, and return true, or return false if there is
+     * no such branch.
+     */
+    boolean removeBranch(String name) {
+        if (!hasBranch(name)) {
+            return false;
+        }
+        setBranch(name, null);
+        return true;
+    }
+
+    /**
+     * Return the names of all branches, in order.
+     */
+    TreeSet<String> getBranchNames() {
+        TreeSet<String> result = new TreeSet<>();
+        List<String> files = Utils.plainFilenamesIn(BRANCH_DIR);
+        for (String file : files == null ? List.<String>of() : files) {
+            if (file.endsWith(".txt")) {
+                result.add(file.substring(0, file.length() - 4));
+            }
+        }
+        result.remove(HEAD);
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            if (branch.getValue() == null) {
+                result.remove(branch.getKey());
+            } else {
+                result.add(branch.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the id of the current commit.
+     */
+    String getHeadCommitId() {
+        return getBranch(getHeadBranch());
+    }
+
+    /**
+     * Return the current commit.
+     */
+    Commit getHeadCommit() {
+        return getCommit(getHeadCommitId());
+    }
+
+    /**
+     * Return true iff HASH is the full id of a commit.
+     */
+    boolean hasCommit(String hash) {
+        return commits.containsKey(hash) || commitFile(hash).isFile();
+    }
+
+    /**
+     * Return the commit whose full id is HASH.
+     */
+    Commit getCommit(String hash) {
+        Commit result = commits.get(hash);
+        if (result == null) {
+            result = Commit.read(commitFile(hash), objects);
+            commits.put(hash, result);
+        }
+        return result;
+    }
+
+    /**
+     * Write COMMIT, which has just been made, to a temporary file to be
+     * moved to the commit directory, and added to the graph and indexes,
+     * by save.  A commit equal to one that already exists, as when the
+     * same change is committed on two branches within one second, is
+     * that commit, and is not added again.
+     */
+    void addCommit(Commit commit) {
+        String hash = commit.getHash();
+        if (hasCommit(hash)) {
+            return;
+        }
+        File temp = new File(GITLET_DIR + hash + ".tmp");
+        commit.write(temp);
+        newCommits.put(hash, temp);
+        commits.put(hash, commit);
+    }
+
+    /**
+     * Return the stage.  Changes made to it are saved only if
+     * stageChanged is called.
+     */
+    Staging getStage() {
+        if (stage == null) {
+            stage = Staging.read(new File(STAGE_DIR + "stage.txt"));
+        }
+        return stage;
+    }
+
+    /**
+     * Replace the stage with an empty one.
+     */
+    void newStage() {
+        stage = new Staging();
+        stageDirty = true;
+    }
+
+    /**
+     * Note that the stage has changed.
+     */
+    void stageChanged() {
+        stageDirty = true;
+    }
+
+    /**
+     * Write back everything changed since the last save.  The new
+     * commits are synced together, the object store flushes its pack
+     * and index, and the commits are renamed into place and added to
+     * the graph and indexes; then the stage, branches and head are
+     * updated all at once through the journal.  The stat cache, which
+     * is only a cache, is written last.
+     */
+    void save() {
+        for (File temp : newCommits.values()) {
+            Journal.sync(temp);
+        }
+        objects.flush();
+        if (!newCommits.isEmpty()) {
+            for (Map.Entry<String, File> temp : newCommits.entrySet()) {
+                Journal.rename(temp.getValue(), commitFile(temp.getKey()));
+            }
+            Journal.sync(new File(COMMIT_DIR));
+            for (String hash : newCommits.keySet()) {
+                Commit commit = commits.get(hash);
+                graph.add(commit);
+                messages.add(hash, commit.getLog());
+                commitIds.add(ObjectId.fromHex(hash));
+                catalog.add(commit);
+            }
+            newCommits.clear();
+        }
+        TreeMap<File, byte[]> updates = new TreeMap<>();
+        if (stageDirty) {
+            updates.put(new File(STAGE_DIR + "stage.txt"), stage.encode());
+        }
+        for (String name : dirtyBranches) {
+            String hash = branches.get(name);
+            updates.put(branchFile(name), hash == null ? null
+                    : hash.getBytes(StandardCharsets.UTF_8));
+        }
+        if (headDirty) {
+            updates.put(branchFile(HEAD),
+                    head.getBytes(StandardCharsets.UTF_8));
+        }
+        journal.apply(updates);
+        stageDirty = headDirty = false;
+        dirtyBranches.clear();
+        index.save();
+    }
+
+    /**
+     * Release the files held open, without saving.  Objects and commits
+     * made since the last save are left unreferenced.
+     */
+    void release() {
+        objects.release();
+        graph.close();
+    }
+
+    /**
+     * Forget the head, the branches and the stage, which other processes
+     * may change, so that the next command reads them again, having
+     * first replayed any journal such a process left.  The commits read
+     * so far never change and are kept.  Only a saved session may be
+     * refreshed.
+     */
+    void refresh() {
+        journal.replay();
+        head = null;
+        branches.clear();
+        stage = null;
+    }
+
+    /**
+     * Return the sizes and modification times of the files behind the
+     * object store and the indexes, which change whenever a command
+     * writes any of them.
+     */
+    String stamp() {
+        StringBuilder result = new StringBuilder();
+        for (String name : List.of(BLOB_DIR + ObjectStore.PACK_NAME,
+                BLOB_DIR + ObjectStore.INDEX_NAME, STAGE_DIR + "index",
+                GITLET_DIR + "commit-graph", GITLET_DIR + "message-index",
+                GITLET_DIR + "commit-ids", GITLET_DIR + "commit-catalog")) {
+            result.append(name).append(' ');
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        new File(name).toPath(), BasicFileAttributes.class);
+                result.append(attrs.size()).append(' ')
+                    .append(attrs.lastModifiedTime());
+            } catch (IOException excp) {
+                result.append('-');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the file holding commit HASH.
+     */
+    private static File commitFile(String hash) {
+        return new File(COMMIT_DIR + hash + ".txt");
+    }
+
+    /**
+     * Return the file holding branch NAME.
+     */
+    private static File branchFile(String name) {
+        return new File(BRANCH_DIR + name + ".txt");
+    }
+}
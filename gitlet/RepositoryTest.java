@@ -0,0 +1,54 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of whole commands on a repository.
+ *  @author Sasha L.
+ */
+public class RepositoryTest {
+
+    /** Commands that make the same commit, removing f.txt from the same
+     *  parent, on two branches, and then list every commit. */
+    private static final String SAME_COMMIT_TWICE = String.join("\n",
+            "init", "add f.txt", "commit one", "branch other",
+            "rm f.txt", "commit two", "checkout other", "rm f.txt",
+            "commit two", "global-log", "");
+
+    /** Matches the id line of a commit in a log. */
+    private static final Pattern COMMIT_LINE =
+        Pattern.compile("^commit ([0-9a-f]{40})", Pattern.MULTILINE);
+
+    /** The same commit made twice, which happens when both are made in
+     *  the same second, is stored and listed once.  The commands are
+     *  run again until their two commits do fall in the same second. */
+    @Test
+    public void sameCommitTwice() {
+        for (int attempt = 0; attempt < 10; attempt += 1) {
+            File dir = TestFiles.tempDir();
+            Utils.writeContents(new File(dir, "f.txt"), "f");
+            String log = TestFiles.gitlet(dir, SAME_COMMIT_TWICE, "batch");
+            File branches = new File(dir, ".gitlet/branches");
+            String master = Utils.readContentsAsString(
+                    new File(branches, "master.txt"));
+            if (!master.equals(Utils.readContentsAsString(
+                    new File(branches, "other.txt")))) {
+                continue;
+            }
+            HashSet<String> ids = new HashSet<>();
+            Matcher commit = COMMIT_LINE.matcher(log);
+            while (commit.find()) {
+                assertTrue("listed twice: " + commit.group(1),
+                           ids.add(commit.group(1)));
+            }
+            assertEquals(3, ids.size());
+            return;
+        }
+        fail("the two commits never fell in the same second");
+    }
+}
@@ -1,10 +1,37 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.TreeMap;
 
+/**
+ * The staging area.  It is stored in the same compact binary format as
+ * commits; a stage written by earlier versions with Java serialization
+ * is still readable.
+ *
+ * @author Sasha L.
+ */
 public class Staging implements Serializable {
+    /**
+     * The implicit serialVersionUID of the class as it was when it was
+     * stored with Java serialization, so that such files stay readable.
+     */
+    private static final long serialVersionUID = 1292151226412369386L;
+    /**
+     * Magic number that starts an encoded stage ("GSTG").
+     */
+    private static final int MAGIC = 0x47535447;
+    /**
+     * Current encoding version.
+     */
+    private static final int VERSION = 1;
 
     /**
      * Files to add.
@@ -20,6 +47,67 @@ public class Staging implements Serializable {
         removeFiles = new ArrayList<>();
     }
 
+    /**
+     * Return the stage stored in FILE, in either the current encoding or
+     * Java serialization.
+     */
+    public static Staging read(File file) {
+        byte[] contents = Utils.readContents(file);
+        if (Utils.isSerialized(contents)) {
+            return Utils.readObject(file, Staging.class);
+        }
+        Staging result = new Staging();
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(contents));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt stage.");
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = Utils.readString(in);
+                result.add(name, Utils.readId(in));
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                result.addRemove(Utils.readString(in));
+            }
+        } catch (IOException | NegativeArraySizeException excp) {
+            throw Utils.error("Corrupt stage.");
+        }
+        return result;
+    }
+
+    /**
+     * Write this stage to FILE in the current encoding.
+     */
+    public void write(File file) {
+        Utils.writeContents(file, encode());
+    }
+
+    /**
+     * Return this stage in the current encoding.
+     */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(addFiles.size());
+            for (Map.Entry<String, String> toAdd : addFiles.entrySet()) {
+                Utils.writeString(out, toAdd.getKey());
+                Utils.writeId(out, toAdd.getValue());
+            }
+            out.writeInt(removeFiles.size());
+            for (String toRemove : removeFiles) {
+                Utils.writeString(out, toRemove);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding stage.");
+        }
+        return bytes.toByteArray();
+    }
+
     public void clear() {
         addFiles.clear();
         removeFiles.clear();
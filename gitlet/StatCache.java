@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache of the hashes of working files, keyed by path and
+ * validated by each file's modification time, size and inode.  A file
+ * whose stat data still match its entry is not read again.  As in Git,
+ * an entry whose modification time is not older than the cache file
+ * itself is "racily clean": the file might have changed again within
+ * the same timestamp tick after it was hashed, so it is rehashed.
+ * Several threads may hash files through one cache at once: the stat
+ * calls are made outside the lock, which guards only the entries.
+ *
+ * @author Sasha L.
+ */
+class StatCache {
+    /**
+     * Magic number that starts a cache file ("GSTC").
+     */
+    private static final int MAGIC = 0x47535443;
+    /**
+     * Current encoding version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * File holding the cache.
+     */
+    private final File file;
+    /**
+     * Entries by path, or null if not yet loaded.
+     */
+    private HashMap<String, Entry> entries;
+    /**
+     * Modification time of file when it was loaded, in nanoseconds.
+     */
+    private long loadedAt;
+    /**
+     * True iff entries has changed since it was loaded.
+     */
+    private boolean dirty;
+
+    /**
+     * A cache stored in FILE.  Nothing is read until it is first used.
+     */
+    StatCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Return the SHA-1 of the contents of working file PATH, reading it
+     * only if its stat data have changed since it was last hashed.
+     */
+    ObjectId hash(File path) {
+        ObjectId result = lookup(path);
+        if (result == null) {
+            result = ObjectId.ofFile(path);
+            record(path, result);
+        }
+        return result;
+    }
+
+    /**
+     * Return the hash recorded for working file PATH if its stat data
+     * still match the record and it is not racily clean; otherwise null.
+     * The file is examined before the lock is taken, so that several
+     * threads may look up files at once.
+     */
+    ObjectId lookup(File path) {
+        Entry now = stat(path, null);
+        Entry entry;
+        long loaded;
+        synchronized (this) {
+            load();
+            entry = entries.get(path.getPath());
+            loaded = loadedAt;
+        }
+        if (entry == null || now == null || !entry.sameStat(now)
+                || entry.mtime >= loaded) {
+            Stats.count("stat-cache.hashed");
+            return null;
+        }
+        Stats.count("stat-cache.skipped");
+        return entry.hash;
+    }
+
+    /**
+     * Record that working file PATH, as it is now, has hash HASH.  As in
+     * lookup, the file is examined before the lock is taken.
+     */
+    void record(File path, ObjectId hash) {
+        Entry entry = stat(path, hash);
+        if (entry == null) {
+            return;
+        }
+        synchronized (this) {
+            load();
+            entries.put(path.getPath(), entry);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Write the cache back if it has changed.
+     */
+    synchronized void save() {
+        if (!dirty || !file.getParentFile().isDirectory()) {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                Utils.writeString(out, e.getKey());
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.size);
+                out.writeLong(entry.inode);
+                entry.hash.writeTo(out);
+            }
+        } catch (IOException excp) {
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+        }
+        dirty = false;
+    }
+
+    /**
+     * Read the cache file, if that has not been done.  A missing or
+     * unreadable cache is treated as empty; it is only an optimization.
+     */
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        loadedAt = Long.MIN_VALUE;
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            loadedAt = Files.getLastModifiedTime(file.toPath())
+                .to(TimeUnit.NANOSECONDS);
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(Utils.readContents(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = Utils.readString(in);
+                long mtime = in.readLong();
+                long size = in.readLong();
+                long inode = in.readLong();
+                entries.put(path,
+                        new Entry(mtime, size, inode,
+                                     ObjectId.readFrom(in)));
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Return an entry holding the current stat data of PATH and HASH, or
+     * null if PATH cannot be examined.
+     */
+    private static Entry stat(File path, ObjectId hash) {
+        Path p = path.toPath();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(p, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return new Entry(attrs.lastModifiedTime()
+                                 .to(TimeUnit.NANOSECONDS),
+                             attrs.size(), inode(p, attrs), hash);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the inode number of P, whose basic attributes are ATTRS, or
+     * a stand-in where the file system does not report inodes.
+     */
+    private static long inode(Path p, BasicFileAttributes attrs) {
+        try {
+            Object ino = Files.getAttribute(p, "unix:ino");
+            return ((Number) ino).longValue();
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            Object key = attrs.fileKey();
+            return key == null ? 0 : key.hashCode();
+        }
+    }
+
+    /**
+     * The stat data and hash recorded for one path.
+     */
+    private static class Entry {
+        /**
+         * Modification time, in nanoseconds.
+         */
+        private final long mtime;
+        /**
+         * Size in bytes.
+         */
+        private final long size;
+        /**
+         * Inode number.
+         */
+        private final long inode;
+        /**
+         * SHA-1 of the contents.
+         */
+        private final ObjectId hash;
+
+        /**
+         * An entry for a file with modification time MTIME, size SIZE and
+         * inode INODE, whose contents have hash HASH.
+         */
+        Entry(long mtime, long size, long inode, ObjectId hash) {
+            this.mtime = mtime;
+            this.size = size;
+            this.inode = inode;
+            this.hash = hash;
+        }
+
+        /**
+         * Return true iff OTHER has the same stat data as this entry.
+         */
+        boolean sameStat(Entry other) {
+            return mtime == other.mtime && size == other.size
+                && inode == other.inode;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the stat cache and its file.
+ *  @author Sasha L.
+ */
+public class StatCacheTest {
+
+    /** Return a file in DIR holding CONTENTS, last modified a minute
+     *  ago, so that it is not racily clean. */
+    private static File oldFile(File dir, String contents) {
+        File file = new File(dir, "work.txt");
+        Utils.writeContents(file, contents);
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        return file;
+    }
+
+    /** A recorded hash is found by the next cache while the file is
+     *  unchanged, and not once it changes. */
+    @Test
+    public void saveAndReload() {
+        File dir = TestFiles.tempDir();
+        File work = oldFile(dir, "contents");
+        File index = new File(dir, "index");
+        StatCache cache = new StatCache(index);
+        ObjectId hash = cache.hash(work);
+        assertEquals(ObjectId.of("contents".getBytes()), hash);
+        cache.save();
+        assertEquals(hash, new StatCache(index).lookup(work));
+        Utils.writeContents(work, "changed!");
+        assertNull(new StatCache(index).lookup(work));
+    }
+
+    /** A file last modified in the same tick as the cache file is
+     *  hashed again, since it may have changed after it was recorded. */
+    @Test
+    public void racilyClean() {
+        File dir = TestFiles.tempDir();
+        File work = oldFile(dir, "contents");
+        File index = new File(dir, "index");
+        StatCache cache = new StatCache(index);
+        ObjectId hash = cache.hash(work);
+        cache.save();
+        index.setLastModified(work.lastModified());
+        assertNull(new StatCache(index).lookup(work));
+        index.setLastModified(work.lastModified() + 1000);
+        assertEquals(hash, new StatCache(index).lookup(work));
+    }
+
+    /** Files hashed through one cache on several threads get their
+     *  own hashes, and all of them are recorded. */
+    @Test
+    public void concurrent() {
+        File dir = TestFiles.tempDir();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 4 * Hasher.SEQUENTIAL_LIMIT; i += 1) {
+            File file = new File(dir, "f" + i);
+            Utils.writeContents(file, "file " + i);
+            file.setLastModified(System.currentTimeMillis() - 60000);
+            files.add(file);
+        }
+        File index = new File(dir, "index");
+        StatCache cache = new StatCache(index);
+        ObjectId[] hashes = Hasher.hashAll(files, cache, 4);
+        cache.save();
+        StatCache reread = new StatCache(index);
+        for (int i = 0; i < files.size(); i += 1) {
+            assertEquals(ObjectId.of(("file " + i).getBytes()), hashes[i]);
+            assertEquals(hashes[i], reread.lookup(files.get(i)));
+        }
+    }
+
+    /** A damaged cache file never gives a wrong hash, only a miss. */
+    @Test
+    public void damaged() {
+        File dir = TestFiles.tempDir();
+        File work = oldFile(dir, "contents");
+        File index = new File(dir, "index");
+        StatCache cache = new StatCache(index);
+        ObjectId hash = cache.hash(work);
+        cache.save();
+        TestFiles.eachDamage(index, () -> {
+            ObjectId found = new StatCache(index).lookup(work);
+            assertTrue(found == null || found.equals(hash));
+        });
+    }
+}
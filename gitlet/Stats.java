@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Named event counters for the current command.  When the system
+ * property gitlet.stats is set (java -Dgitlet.stats gitlet.Main ...),
+ * report prints every counter on System.err as the command finishes.
+ *
+ * @author Sasha L.
+ */
+class Stats {
+    /**
+     * Counters by name.
+     */
+    private static final TreeMap<String, Long> COUNTS = new TreeMap<>();
+
+    /**
+     * Add 1 to the counter NAME.
+     */
+    static void count(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Add N to the counter NAME.
+     */
+    static synchronized void add(String name, long n) {
+        COUNTS.put(name, COUNTS.getOrDefault(name, 0L) + n);
+    }
+
+    /**
+     * Return the value of the counter NAME.
+     */
+    static synchronized long get(String name) {
+        return COUNTS.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Reset all counters to 0.
+     */
+    static synchronized void clear() {
+        COUNTS.clear();
+    }
+
+    /**
+     * Print all counters on System.err, if requested.
+     */
+    static synchronized void report() {
+        if (System.getProperty("gitlet.stats") == null) {
+            return;
+        }
+        for (Map.Entry<String, Long> count : COUNTS.entrySet()) {
+            System.err.printf("%s: %d%n", count.getKey(), count.getValue());
+        }
+    }
+}
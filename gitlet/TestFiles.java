@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Files and data for the unit tests: fresh directories, commands
+ *  run in them, random contents, and damage done to files the way a
+ *  crash or a bad disk would do it.
+ *  @author Sasha L.
+ */
+class TestFiles {
+
+    /** Return a new temporary directory holding empty directories
+     *  named SUBDIRS. */
+    static File tempDir(String... subdirs) {
+        try {
+            File root = Files.createTempDirectory("gitlet-test").toFile();
+            for (String sub : subdirs) {
+                new File(root, sub).mkdir();
+            }
+            return root;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Run gitlet.Main with arguments ARGS in a new JVM in directory
+     *  DIR, with INPUT as its standard input, and return its standard
+     *  output. */
+    static String gitlet(File dir, String input, String... args) {
+        ProcessBuilder child = new ProcessBuilder(
+                BenchSetup.javaCommand(List.of(), Main.class, args));
+        child.directory(dir).redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Process process = child.start();
+            try (OutputStream in = process.getOutputStream()) {
+                in.write(input.getBytes(StandardCharsets.UTF_8));
+            }
+            String result = new String(
+                    process.getInputStream().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            process.waitFor();
+            return result;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return LEN random bytes drawn from RAND. */
+    static byte[] randomBytes(Random rand, int len) {
+        byte[] result = new byte[len];
+        rand.nextBytes(result);
+        return result;
+    }
+
+    /** Replace FILE in turn by each of the ways a crash or a bad disk
+     *  may leave its present contents: cut short by a byte, cut in
+     *  half, with its first byte changed, and followed by garbage.  Run
+     *  CHECK after each.  The contents are restored before each damage,
+     *  so CHECK may rebuild or delete FILE. */
+    static void eachDamage(File file, Runnable check) {
+        byte[] contents = Utils.readContents(file);
+        byte[] header = contents.clone();
+        header[0] ^= (byte) 0xff;
+        byte[] padded = Arrays.copyOf(contents, contents.length + 7);
+        Arrays.fill(padded, contents.length, padded.length, (byte) 0x5a);
+        for (byte[] damaged : new byte[][] {
+                Arrays.copyOf(contents, contents.length - 1),
+                Arrays.copyOf(contents, contents.length / 2),
+                header, padded }) {
+            Utils.writeContents(file, damaged);
+            check.run();
+        }
+    }
+}
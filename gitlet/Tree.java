@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of one directory level: the blobs of the files directly in
+ * it and the trees of its subdirectories, each by hash.  Trees are kept
+ * in the object store under the hash of their encoding, so commits that
+ * leave a directory unchanged share its tree, and a new commit only
+ * writes the trees on the paths to the files it changes.
+ *
+ * @author Sasha L.
+ */
+class Tree {
+    /**
+     * Magic number that starts an encoded tree ("GTRE").
+     */
+    private static final int MAGIC = 0x47545245;
+    /**
+     * Current encoding version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Separator between the components of a path.
+     */
+    static final char SEPARATOR = '/';
+
+    /**
+     * Blob hashes of the files in this directory, by name.
+     */
+    private final TreeMap<String, String> blobs = new TreeMap<>();
+    /**
+     * Tree hashes of the subdirectories of this directory, by name.
+     */
+    private final TreeMap<String, String> subtrees = new TreeMap<>();
+
+    /**
+     * Return the tree with hash HASH from STORE; an empty tree if HASH is
+     * null.
+     */
+    static Tree read(ObjectStore store, String hash) {
+        Tree result = new Tree();
+        if (hash == null) {
+            return result;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(store.get(hash)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt tree %s.", hash);
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                boolean isTree = in.readBoolean();
+                String name = Utils.readString(in);
+                String id = Utils.readId(in);
+                (isTree ? result.subtrees : result.blobs).put(name, id);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree %s.", hash);
+        }
+        return result;
+    }
+
+    /**
+     * Store this tree in STORE, as a delta against the tree with hash
+     * BASE if that is not null, and return its hash.
+     */
+    String write(ObjectStore store, String base) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blobs.size() + subtrees.size());
+            for (Map.Entry<String, String> sub : subtrees.entrySet()) {
+                out.writeBoolean(true);
+                Utils.writeString(out, sub.getKey());
+                Utils.writeId(out, sub.getValue());
+            }
+            for (Map.Entry<String, String> blob : blobs.entrySet()) {
+                out.writeBoolean(false);
+                Utils.writeString(out, blob.getKey());
+                Utils.writeId(out, blob.getValue());
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+        byte[] contents = bytes.toByteArray();
+        String hash = Utils.sha1(contents);
+        store.put(hash, contents, base);
+        return hash;
+    }
+
+    /**
+     * Return true iff this tree has no entries.
+     */
+    boolean isEmpty() {
+        return blobs.isEmpty() && subtrees.isEmpty();
+    }
+
+    /**
+     * Return the hash of the tree that results from applying CHANGES to
+     * the tree ROOT in STORE, writing any new trees to STORE.  CHANGES
+     * maps paths to their new blob hashes, or to null for paths to
+     * remove.  ROOT may be null, denoting an empty tree.  Subtrees that
+     * no change touches are shared with ROOT, and directories left empty
+     * are dropped.
+     */
+    static String update(ObjectStore store, String root,
+                         Map<String, String> changes) {
+        String result = apply(store, root, changes);
+        return result != null ? result : new Tree().write(store, null);
+    }
+
+    /**
+     * As for update, but return null if the resulting tree is empty.
+     */
+    private static String apply(ObjectStore store, String root,
+                                Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return root;
+        }
+        Tree tree = read(store, root);
+        TreeMap<String, TreeMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int sep = path.indexOf(SEPARATOR);
+            if (sep < 0) {
+                if (change.getValue() == null) {
+                    tree.blobs.remove(path);
+                } else {
+                    tree.blobs.put(path, change.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, sep),
+                        k -> new TreeMap<>())
+                    .put(path.substring(sep + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> dir
+                : below.entrySet()) {
+            String sub = apply(store, tree.subtrees.get(dir.getKey()),
+                    dir.getValue());
+            if (sub == null) {
+                tree.subtrees.remove(dir.getKey());
+            } else {
+                tree.subtrees.put(dir.getKey(), sub);
+            }
+        }
+        if (tree.isEmpty()) {
+            return null;
+        }
+        return tree.write(store, root);
+    }
+
+    /**
+     * Return the blob hash of the file at PATH under the tree HASH in
+     * STORE, or null if there is none.  Only the trees of the
+     * directories along PATH are read.
+     */
+    static String lookup(ObjectStore store, String hash, String path) {
+        int start = 0;
+        for (int sep = path.indexOf(SEPARATOR); sep >= 0;
+             sep = path.indexOf(SEPARATOR, start)) {
+            if (hash == null) {
+                return null;
+            }
+            hash = read(store, hash).subtrees.get(path.substring(start, sep));
+            start = sep + 1;
+        }
+        return hash == null ? null
+            : read(store, hash).blobs.get(path.substring(start));
+    }
+
+    /**
+     * Add the paths of all files under the tree HASH in STORE, prefixed
+     * by PREFIX, to INTO, mapped to their blob hashes.
+     */
+    static void flatten(ObjectStore store, String hash, String prefix,
+                        Map<String, String> into) {
+        Tree tree = read(store, hash);
+        for (Map.Entry<String, String> blob : tree.blobs.entrySet()) {
+            into.put(prefix + blob.getKey(), blob.getValue());
+        }
+        for (Map.Entry<String, String> sub : tree.subtrees.entrySet()) {
+            flatten(store, sub.getValue(),
+                    prefix + sub.getKey() + SEPARATOR, into);
+        }
+    }
+
+    /**
+     * Add to INTO every path under PREFIX whose blob differs between the
+     * trees FROM and TO in STORE, mapped to its blob hash in TO, or to
+     * null if TO does not have it.  Add to OLD those of these paths that
+     * FROM has, mapped to their blob hashes in FROM.  Either tree may be
+     * null, denoting an empty tree.  Subtrees with equal hashes are not
+     * visited.
+     */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, Map<String, String> into,
+                     Map<String, String> old) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = read(store, from);
+        Tree b = read(store, to);
+        for (Map.Entry<String, String> blob : a.blobs.entrySet()) {
+            String newHash = b.blobs.get(blob.getKey());
+            if (!blob.getValue().equals(newHash)) {
+                into.put(prefix + blob.getKey(), newHash);
+                old.put(prefix + blob.getKey(), blob.getValue());
+            }
+        }
+        for (Map.Entry<String, String> blob : b.blobs.entrySet()) {
+            if (!a.blobs.containsKey(blob.getKey())) {
+                into.put(prefix + blob.getKey(), blob.getValue());
+            }
+        }
+        TreeMap<String, String> names = new TreeMap<>(a.subtrees);
+        names.putAll(b.subtrees);
+        for (String name : names.keySet()) {
+            diff(store, a.subtrees.get(name), b.subtrees.get(name),
+                    prefix + name + SEPARATOR, into, old);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of trees and their encoding.
+ *  @author Sasha L.
+ */
+public class TreeTest {
+
+    /** Return the blob map of the tree HASH in STORE. */
+    private static TreeMap<String, String> flatten(ObjectStore store,
+                                                   String hash) {
+        TreeMap<String, String> result = new TreeMap<>();
+        Tree.flatten(store, hash, "", result);
+        return result;
+    }
+
+    /** Files at any depth are found by flatten and by lookup, and
+     *  removing the last file of a directory drops it. */
+    @Test
+    public void updateAndLookup() {
+        ObjectStore store = new ObjectStore(TestFiles.tempDir());
+        TreeMap<String, String> blobs = new TreeMap<>();
+        blobs.put("a.txt", Utils.sha1("a"));
+        blobs.put("src/b.txt", Utils.sha1("b"));
+        blobs.put("src/main/c.txt", Utils.sha1("c"));
+        String root = Tree.update(store, null, blobs);
+        assertEquals(blobs, flatten(store, root));
+        for (String path : blobs.keySet()) {
+            assertEquals(blobs.get(path), Tree.lookup(store, root, path));
+        }
+        assertNull(Tree.lookup(store, root, "src"));
+        assertNull(Tree.lookup(store, root, "src/main/d.txt"));
+        assertNull(Tree.lookup(store, root, "a.txt/e.txt"));
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put("src/main/c.txt", null);
+        String pruned = Tree.update(store, root, changes);
+        blobs.remove("src/main/c.txt");
+        assertEquals(blobs, flatten(store, pruned));
+        assertNull(Tree.lookup(store, pruned, "src/main/c.txt"));
+    }
+
+    /** Equal snapshots have equal trees, whatever order they were
+     *  built in. */
+    @Test
+    public void sameSnapshotSameHash() {
+        ObjectStore store = new ObjectStore(TestFiles.tempDir());
+        TreeMap<String, String> first = new TreeMap<>();
+        first.put("x/y.txt", Utils.sha1("y"));
+        TreeMap<String, String> second = new TreeMap<>();
+        second.put("z.txt", Utils.sha1("z"));
+        String both = Tree.update(store, Tree.update(store, null, first),
+                second);
+        TreeMap<String, String> all = new TreeMap<>(first);
+        all.putAll(second);
+        assertEquals(Tree.update(store, null, all), both);
+    }
+
+    /** diff finds exactly the changed paths, and their old blobs. */
+    @Test
+    public void diff() {
+        ObjectStore store = new ObjectStore(TestFiles.tempDir());
+        TreeMap<String, String> blobs = new TreeMap<>();
+        blobs.put("same/s.txt", Utils.sha1("s"));
+        blobs.put("dir/changed.txt", Utils.sha1("old"));
+        blobs.put("gone.txt", Utils.sha1("gone"));
+        String from = Tree.update(store, null, blobs);
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put("dir/changed.txt", Utils.sha1("new"));
+        changes.put("gone.txt", null);
+        changes.put("dir/added.txt", Utils.sha1("added"));
+        String to = Tree.update(store, from, changes);
+        TreeMap<String, String> into = new TreeMap<>();
+        TreeMap<String, String> old = new TreeMap<>();
+        Tree.diff(store, from, to, "", into, old);
+        assertEquals(changes, into);
+        assertEquals(2, old.size());
+        assertEquals(Utils.sha1("old"), old.get("dir/changed.txt"));
+    }
+
+    /** A tree whose encoding is cut short or damaged is reported. */
+    @Test
+    public void corrupt() {
+        File dir = TestFiles.tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        TreeMap<String, String> blobs = new TreeMap<>();
+        blobs.put("a.txt", Utils.sha1("a"));
+        blobs.put("b.txt", Utils.sha1("b"));
+        byte[] encoding = store.get(Tree.update(store, null, blobs));
+        byte[] badMagic = encoding.clone();
+        badMagic[0] ^= 1;
+        for (byte[] bad : new byte[][] {
+                Arrays.copyOf(encoding, encoding.length - 5),
+                Arrays.copyOf(encoding, 6), badMagic }) {
+            String hash = store.put(bad);
+            try {
+                Tree.read(store, hash);
+                fail("corrupt tree accepted");
+            } catch (GitletException excp) {
+                assertEquals("Corrupt tree " + hash + ".", excp.getMessage());
+            }
+        }
+    }
+}
@@ -12,7 +12,14 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, ObjectStoreTest.class,
+                                      DeltaTest.class, TreeTest.class,
+                                      StatCacheTest.class,
+                                      CommitGraphTest.class,
+                                      LineMergeTest.class,
+                                      MessageIndexTest.class, IdIndexTest.class,
+                                      CommitCatalogTest.class,
+                                      JournalTest.class, RepositoryTest.class));
     }
 
     /** A dummy test to avoid complaint. */
@@ -4,6 +4,9 @@ package gitlet;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
@@ -11,13 +14,13 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -34,25 +37,17 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
         }
+        return bytesToHex(md.digest(), 0);
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -61,6 +56,86 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns this thread's reusable SHA-1 MessageDigest, reset.  The
+     *  digest must be finished before the thread hashes anything else. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1.get();
+        md.reset();
+        return md;
+    }
+
+    /** Per-thread digests for sha1Digest.  (This and IO_BUFFER are
+     *  anonymous classes rather than lambdas, since the first lambda a
+     *  JVM meets costs several milliseconds of startup.) */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        new ThreadLocal<>() {
+            @Override
+            protected MessageDigest initialValue() {
+                try {
+                    return MessageDigest.getInstance("SHA-1");
+                } catch (NoSuchAlgorithmException excp) {
+                    throw new IllegalArgumentException(
+                        "System does not support SHA-1");
+                }
+            }
+        };
+
+    /** Size of the buffers returned by ioBuffer. */
+    static final int IO_BUFFER_SIZE = 1 << 16;
+
+    /** Returns this thread's reusable direct buffer of IO_BUFFER_SIZE
+     *  bytes, cleared. */
+    static ByteBuffer ioBuffer() {
+        ByteBuffer buf = IO_BUFFER.get();
+        buf.clear();
+        return buf;
+    }
+
+    /** Per-thread buffers for ioBuffer. */
+    private static final ThreadLocal<ByteBuffer> IO_BUFFER =
+        new ThreadLocal<>() {
+            @Override
+            protected ByteBuffer initialValue() {
+                return ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            }
+        };
+
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the UID_BYTES raw bytes denoted by the hexadecimal UID
+     *  HEX. */
+    static byte[] hexToBytes(String hex) {
+        if (hex.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("malformed UID: " + hex);
+        }
+        byte[] result = new byte[UID_BYTES];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("malformed UID: " + hex);
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal numeral for the UID_BYTES bytes of RAW
+     *  starting at OFFSET. */
+    static String bytesToHex(byte[] raw, int offset) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            int b = raw[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >>> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** The hexadecimal digits, in order. */
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -90,11 +165,13 @@ class Utils {
 
     /** Return the entire contents of FILE as a byte array.  FILE must
      *  be a normal file.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  in case of problems.  Each call counts as one disk read in
+     *  Stats. */
     static byte[] readContents(File file) {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        Stats.count("disk.reads");
         try {
             return Files.readAllBytes(file.toPath());
         } catch (IOException excp) {
@@ -138,6 +215,7 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        Stats.count("disk.reads");
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
@@ -220,6 +298,55 @@ class Utils {
 
 
 
+    /* BINARY ENCODING UTILITIES */
+
+    /** Write STR to OUT as its length in UTF-8 bytes followed by those
+     *  bytes. */
+    static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read and return a String written by writeString from IN.  A
+     *  length that is negative or runs past the end of IN throws an
+     *  IOException; memory is allocated only as the bytes arrive, so a
+     *  corrupt length cannot exhaust it. */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("negative string length");
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write the hexadecimal UID HASH to OUT as UID_BYTES raw bytes. */
+    static void writeId(DataOutputStream out, String hash)
+        throws IOException {
+        out.write(hexToBytes(hash));
+    }
+
+    /** Read and return, as a hexadecimal numeral, a UID written by
+     *  writeId from IN. */
+    static String readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[UID_BYTES];
+        in.readFully(raw);
+        return bytesToHex(raw, 0);
+    }
+
+    /** Return true iff CONTENTS begins with the header that Java
+     *  serialization (and so writeObject) puts at the start of every
+     *  stream. */
+    static boolean isSerialized(byte[] contents) {
+        return contents.length >= 2 && (contents[0] & 0xff) == 0xac
+            && (contents[1] & 0xff) == 0xed;
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as